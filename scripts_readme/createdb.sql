@@ -1,3 +1,5 @@
 CREATE DATABASE school_berezin;
 CREATE USER school_berezin_user WITH password 'school_berezin';
 GRANT ALL ON DATABASE school_berezin TO school_berezin_user;
+\c school_berezin
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
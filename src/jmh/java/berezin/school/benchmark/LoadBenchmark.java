@@ -0,0 +1,154 @@
+package berezin.school.benchmark;
+/**
+ * Нагрузочный бенчмарк: сравнение обработки запросов в пуле потоков платформы
+ * и в виртуальных потоках (virtualThreads, school.virtual-threads.enabled, Java 21+).
+ * Запросы выполняются по HTTP к встроенному Tomcat: страница пользователя (обращение к БД,
+ * пул dbExecutor) и главная страница (без обращения к БД).
+ * Количество клиентов - @Threads (переопределяется -t). Результат - запросы в секунду,
+ * ответы 503 (очередь dbExecutor заполнена) считаются отдельно в счетчике rejected.
+ * Память: после каждой итерации выводятся количество потоков JVM (текущее и пиковое)
+ * и занятая память heap/non-heap, а также статистика пула соединений БД (время получения
+ * соединения, созданные соединения); аллокации на запрос - профилировщик gc (-prof gc).
+ * Время ответа встроенной H2 мало, преимущество виртуальных потоков проявляется
+ * на внешней БД (-Dbenchmark.url=...)
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import berezin.school.services.ConnectionPoolStatistics;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(64)
+@Fork(1)
+public class LoadBenchmark {
+
+	/** Количество пользователей в таблице */
+	@Param({ "10000" })
+	public int users;
+
+	/** Виртуальные потоки Tomcat и dbExecutor (school.virtual-threads.enabled) */
+	@Param({ "false", "true" })
+	public boolean virtualThreads;
+
+	/** Размер пула dbExecutor и пула соединений БД */
+	@Param({ "10" })
+	public int dbPoolSize;
+
+	private ConfigurableApplicationContext context;
+
+	private String baseUrl;
+
+	@Setup(Level.Trial)
+	public void start() {
+		context = SchoolContext.start(users, false,
+				"school.virtual-threads.enabled=" + virtualThreads,
+				"school.db-executor.pool-size=" + dbPoolSize);
+		int port = ((EmbeddedWebApplicationContext) context).getEmbeddedServletContainer().getPort();
+		baseUrl = "http://localhost:" + port;
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		context.close();
+	}
+
+	@Setup(Level.Iteration)
+	public void resetPeakThreads() {
+		ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+	}
+
+	/** Потоки и память JVM (приложение и клиенты бенчмарка), пул соединений БД за итерацию */
+	@TearDown(Level.Iteration)
+	public void printResources() {
+
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		System.out.printf("threads %d (peak %d), heap %d MB, non-heap %d MB%n",
+				threads.getThreadCount(), threads.getPeakThreadCount(),
+				memory.getHeapMemoryUsage().getUsed() >> 20, memory.getNonHeapMemoryUsage().getUsed() >> 20);
+		Map<String, Object> pool = context.getBean(ConnectionPoolStatistics.class).statistics();
+		System.out.printf("connection pool: acquire %s ms, created %s, timeouts %s%n",
+				pool.get("acquireMillis"), pool.get("connectionsCreated"), pool.get("acquireTimeouts"));
+	}
+
+	/** Ответы по потоку: успешные и отклоненные (503) запросы */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Outcome {
+
+		public long accepted;
+
+		public long rejected;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			accepted = 0;
+			rejected = 0;
+		}
+	}
+
+	/** Страница случайного пользователя (GET /users/{login}/showUser) */
+	@Benchmark
+	public int showUser(Outcome outcome) throws IOException {
+		String login = SchoolContext.login(ThreadLocalRandom.current().nextInt(users));
+		return get("/users/" + login + "/showUser", outcome);
+	}
+
+	/** Главная страница без обращения к БД (GET /index) */
+	@Benchmark
+	public int index(Outcome outcome) throws IOException {
+		return get("/index", outcome);
+	}
+
+	/** GET запрос, ответ читается полностью (соединение возвращается в keep-alive) */
+	private int get(String path, Outcome outcome) throws IOException {
+
+		HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+		int status = connection.getResponseCode();
+		if (status == HttpURLConnection.HTTP_OK) {
+			outcome.accepted++;
+		} else if (status == HttpURLConnection.HTTP_UNAVAILABLE) {
+			outcome.rejected++;
+		} else {
+			throw new IllegalStateException("GET " + path + ": " + status);
+		}
+		try (InputStream in = status == HttpURLConnection.HTTP_OK
+				? connection.getInputStream() : connection.getErrorStream()) {
+			byte[] buffer = new byte[8192];
+			while (in.read(buffer) > 0) {
+				// ответ не используется
+			}
+		}
+		return status;
+	}
+
+}
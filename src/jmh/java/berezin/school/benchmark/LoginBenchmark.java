@@ -0,0 +1,129 @@
+package berezin.school.benchmark;
+/**
+ * Бенчмарк входа в систему (POST /login) при одновременных запросах
+ * Запросы выполняются по HTTP к встроенному Tomcat: проверка пароля занимает пул
+ * проверки паролей, потоки Tomcat освобождаются до получения результата.
+ * Параметры: стоимость BCrypt (strength), размер пула и очереди проверки паролей.
+ * Количество клиентов - @Threads (переопределяется -t). Перцентили (p99) - режим SampleTime.
+ * Ответ 503 (очередь пула заполнена) считается отдельно в счетчике rejected
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(32)
+@Fork(1)
+public class LoginBenchmark {
+
+	/** Количество пользователей в таблице */
+	@Param({ "1000" })
+	public int users;
+
+	/** Стоимость BCrypt (school.password.strength) */
+	@Param({ "4", "10" })
+	public int strength;
+
+	/** Размер пула проверки паролей (0 - по количеству процессоров) */
+	@Param({ "0" })
+	public int poolSize;
+
+	/** Размер очереди пула проверки паролей */
+	@Param({ "200" })
+	public int queueCapacity;
+
+	private ConfigurableApplicationContext context;
+
+	private String loginUrl;
+
+	@Setup(Level.Trial)
+	public void start() {
+		context = SchoolContext.start(users, false,
+				"school.password.strength=" + strength,
+				"school.password.pool-size=" + poolSize,
+				"school.password.queue-capacity=" + queueCapacity,
+				"server.tomcat.max-threads=" + 200);
+		int port = ((EmbeddedWebApplicationContext) context).getEmbeddedServletContainer().getPort();
+		loginUrl = "http://localhost:" + port + "/login";
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		context.close();
+	}
+
+	/** Результаты входа по потоку: успешные входы и отклоненные (503) запросы */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Outcome {
+
+		public long accepted;
+
+		public long rejected;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			accepted = 0;
+			rejected = 0;
+		}
+	}
+
+	/** Вход случайного пользователя, ожидается перенаправление в меню пользователя */
+	@Benchmark
+	public int login(Outcome outcome) throws IOException {
+
+		String login = SchoolContext.login(ThreadLocalRandom.current().nextInt(users));
+		byte[] body = ("login=" + login + "&password=" + SchoolContext.PASSWORD).getBytes(StandardCharsets.UTF_8);
+
+		HttpURLConnection connection = (HttpURLConnection) new URL(loginUrl).openConnection();
+		connection.setInstanceFollowRedirects(false);
+		connection.setDoOutput(true);
+		connection.setRequestMethod("POST");
+		connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+		try (OutputStream out = connection.getOutputStream()) {
+			out.write(body);
+		}
+		int status = connection.getResponseCode();
+		if (status == HttpURLConnection.HTTP_MOVED_TEMP) {
+			outcome.accepted++;
+		} else if (status == HttpURLConnection.HTTP_UNAVAILABLE) {
+			outcome.rejected++;
+		} else {
+			throw new IllegalStateException("POST /login: " + status);
+		}
+		InputStream response = status < HttpURLConnection.HTTP_BAD_REQUEST
+				? connection.getInputStream() : connection.getErrorStream();
+		if (response != null) {
+			response.close();
+		}
+		return status;
+	}
+
+}
@@ -0,0 +1,113 @@
+package berezin.school.benchmark;
+/**
+ * Класс SchoolContext - запуск приложения для бенчмарков
+ * По умолчанию используется встроенная БД H2 в режиме PostgreSQL (схема создается Hibernate),
+ * либо внешняя БД: -Dbenchmark.url=jdbc:postgresql://... -Dbenchmark.username=... -Dbenchmark.password=...
+ * (схема создается миграциями Flyway; таблица users, заполненная предыдущим запуском с тем же
+ * количеством пользователей, используется повторно, иначе очищается и заполняется заново).
+ * Таблица users заполняется заданным количеством пользователей b0000000..bN-1 с паролем PASSWORD
+ * и администратором admin/admin. Пароли хранятся хэшами PasswordEncoder приложения
+ * (хэш вычисляется один раз и используется для всех пользователей)
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import berezin.school.Application;
+
+final class SchoolContext {
+
+	/** Количество строк в одном INSERT пакете при заполнении */
+	private static final int SEED_BATCH = 10000;
+
+	/** Поле info заполняется строкой этой длины (ширина строки как у реальных профилей) */
+	private static final int INFO_LENGTH = 500;
+
+	/** Пароль заполненных пользователей */
+	static final String PASSWORD = "password";
+
+	private SchoolContext() {
+	}
+
+	/**
+	 * Запуск приложения (встроенный Tomcat на случайном порту) и заполнение БД
+	 *
+	 * @param users количество пользователей
+	 * @param hibernateCache включить кэш второго уровня и кэш запросов Hibernate
+	 * @param extra дополнительные свойства приложения (ключ=значение)
+	 * @return контекст приложения
+	 */
+	static ConfigurableApplicationContext start(int users, boolean hibernateCache, String... extra) {
+
+		Map<String, String> properties = new HashMap<>();
+		String url = System.getProperty("benchmark.url", "");
+		if (url.isEmpty()) {
+			properties.put("spring.datasource.url", "jdbc:h2:mem:bench;MODE=PostgreSQL;DB_CLOSE_DELAY=-1");
+			properties.put("spring.datasource.driver-class-name", "org.h2.Driver");
+			properties.put("spring.datasource.username", "sa");
+			properties.put("spring.datasource.password", "sa");
+			properties.put("flyway.enabled", "false");
+			properties.put("spring.jpa.hibernate.ddl-auto", "create");
+		} else {
+			properties.put("spring.datasource.url", url);
+			properties.put("spring.datasource.username", System.getProperty("benchmark.username", ""));
+			properties.put("spring.datasource.password", System.getProperty("benchmark.password", ""));
+		}
+		properties.put("server.port", "0");
+		properties.put("logging.level.root", "WARN");
+		properties.put("spring.jpa.properties.hibernate.cache.use_second_level_cache", String.valueOf(hibernateCache));
+		properties.put("spring.jpa.properties.hibernate.cache.use_query_cache", String.valueOf(hibernateCache));
+
+		/** Аргументы командной строки переопределяют application.properties */
+		List<String> args = new ArrayList<>();
+		properties.forEach((key, value) -> args.add("--" + key + "=" + value));
+		for (String property : extra) {
+			args.add("--" + property);
+		}
+		ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+				.run(args.toArray(new String[args.size()]));
+		seed(context.getBean(JdbcTemplate.class), context.getBean(PasswordEncoder.class), users);
+		return context;
+	}
+	/** конец start() */
+
+	/** Заполнение таблицы users и сдвиг последовательности id за пределы заполненных значений */
+	private static void seed(JdbcTemplate jdbc, PasswordEncoder encoder, int users) {
+
+		int existing = jdbc.queryForObject("select count(*) from users", Integer.class);
+		if (existing == users + 1) {
+			return;
+		}
+		if (existing > 0) {
+			jdbc.update("delete from users");
+		}
+
+		String password = encoder.encode(PASSWORD);
+		String info = new String(new char[INFO_LENGTH]).replace('\0', 'i');
+		String sql = "insert into users (id, login, password, name, surname, birth_date, info, version, updated_at) "
+				+ "values (?, ?, ?, ?, ?, ?, ?, 0, current_timestamp)";
+		List<Object[]> batch = new ArrayList<>(SEED_BATCH);
+		for (int i = 0; i < users; i++) {
+			batch.add(new Object[] { i + 1, login(i), password, "Name" + (i % 1000), "Surname" + (i % 5000),
+					java.sql.Date.valueOf("2005-01-01"), info });
+			if (batch.size() == SEED_BATCH) {
+				jdbc.batchUpdate(sql, batch);
+				batch.clear();
+			}
+		}
+		batch.add(new Object[] { users + 1, "admin", encoder.encode("admin"), null, null, null, null });
+		jdbc.batchUpdate(sql, batch);
+		jdbc.execute("alter sequence users_id_seq restart with " + (users + 1000));
+	}
+
+	/** Логин заполненного пользователя с номером i */
+	static String login(int i) {
+		return String.format("b%07d", i);
+	}
+
+}
@@ -0,0 +1,111 @@
+package berezin.school.benchmark;
+/**
+ * Бенчмарк поиска пользователей по логину, имени и фамилии (первая страница, 50 результатов)
+ * search - поиск индексами БД (UserSearchService: совпадение с началом, затем похожие имена и фамилии);
+ * fullList - поиск просмотром всего списка: страницы findPageAfter по MAX_PAGE_SIZE пользователей
+ * проверяются в приложении до заполнения страницы результатов или конца списка.
+ * Индексы поиска создаются миграцией V6 - сравнение имеет смысл на PostgreSQL
+ * (-Dbenchmark.url=..., SchoolContext), на H2 search выполняется запросом без индексов.
+ * Заполненные пользователи: имена Name0..Name999, фамилии Surname0..Surname4999, логины b0000000..
+ * Запросы: начало фамилии, имя и начало фамилии, фамилия с опечаткой (похожие фамилии)
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import berezin.school.repositories.UserRepository;
+import berezin.school.services.UserSearchService;
+import berezin.school.user.UserSummary;
+import berezin.school.wrappers.UserSearchPage;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+	/** Размер страницы результатов */
+	private static final int PAGE_SIZE = 50;
+
+	/** Размер страницы просмотра списка (ApplicationController.MAX_PAGE_SIZE) */
+	private static final int MAX_PAGE_SIZE = 10000;
+
+	/** Количество пользователей в таблице */
+	@Param({ "100000" })
+	public int users;
+
+	/** Строка поиска */
+	@Param({ "surname123", "name12 surname123", "surnme1234" })
+	public String query;
+
+	private ConfigurableApplicationContext context;
+
+	private UserRepository repository;
+
+	private UserSearchService userSearch;
+
+	@Setup(Level.Trial)
+	public void start() {
+		context = SchoolContext.start(users, false);
+		repository = context.getBean(UserRepository.class);
+		userSearch = context.getBean(UserSearchService.class);
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		context.close();
+	}
+
+	@Benchmark
+	public UserSearchPage search() {
+		return userSearch.search(query, 0, PAGE_SIZE);
+	}
+
+	/** Каждое слово запроса - начало логина, имени или фамилии (без поиска похожих) */
+	@Benchmark
+	public List<UserSummary> fullList() {
+
+		List<String> words = Arrays.asList(query.toLowerCase(Locale.ROOT).split(" "));
+		List<UserSummary> found = new ArrayList<>(PAGE_SIZE);
+		int after = 0;
+		List<UserSummary> page;
+		do {
+			page = repository.findPageAfter(after, new PageRequest(0, MAX_PAGE_SIZE));
+			for (UserSummary user : page) {
+				if (words.stream().allMatch(word -> startsWith(user.getLogin(), word)
+						|| startsWith(user.getName(), word) || startsWith(user.getSurName(), word))) {
+					found.add(user);
+					if (found.size() == PAGE_SIZE) {
+						return found;
+					}
+				}
+			}
+			after = page.isEmpty() ? after : page.get(page.size() - 1).getId();
+		} while (page.size() == MAX_PAGE_SIZE);
+		return found;
+	}
+
+	private static boolean startsWith(String value, String word) {
+		return value != null && value.toLowerCase(Locale.ROOT).startsWith(word);
+	}
+
+}
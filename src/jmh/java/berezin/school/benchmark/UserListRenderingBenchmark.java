@@ -0,0 +1,87 @@
+package berezin.school.benchmark;
+/**
+ * Бенчмарк полного цикла Spring MVC для страницы списка пользователей:
+ * контроллер, запрос страницы в пуле dbExecutor и отображение шаблона userList (Thymeleaf)
+ * Запросы выполняются по HTTP к встроенному Tomcat (обработчик асинхронный)
+ * Размер страницы - до максимального (10000 строк), кэш строк списка (UserRowCache)
+ * включен или отключен (school.row-cache.max-size=0): выигрыш кэша строк на больших страницах
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserListRenderingBenchmark {
+
+	/** Количество пользователей в таблице */
+	@Param({ "10000" })
+	public int users;
+
+	/** Размер страницы списка */
+	@Param({ "50", "1000", "10000" })
+	public int pageSize;
+
+	/** Кэш отображенных строк списка */
+	@Param({ "true", "false" })
+	public boolean rowCache;
+
+	private ConfigurableApplicationContext context;
+
+	private URL userList;
+
+	@Setup(Level.Trial)
+	public void start() throws IOException {
+		context = SchoolContext.start(users, false, "school.row-cache.max-size=" + (rowCache ? users : 0));
+		int port = ((EmbeddedWebApplicationContext) context).getEmbeddedServletContainer().getPort();
+		userList = new URL("http://localhost:" + port + "/users?size=" + pageSize);
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		context.close();
+	}
+
+	/** Первая страница списка пользователей (GET /users?size={pageSize}) */
+	@Benchmark
+	public String userList() throws IOException {
+
+		HttpURLConnection connection = (HttpURLConnection) userList.openConnection();
+		if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+			throw new IllegalStateException("GET /users: " + connection.getResponseCode());
+		}
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		try (InputStream in = connection.getInputStream()) {
+			byte[] buffer = new byte[8192];
+			for (int n; (n = in.read(buffer)) > 0;) {
+				body.write(buffer, 0, n);
+			}
+		}
+		return new String(body.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+}
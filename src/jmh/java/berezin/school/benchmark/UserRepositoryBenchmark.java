@@ -0,0 +1,111 @@
+package berezin.school.benchmark;
+/**
+ * Бенчмарки запросов UserRepository на таблице из users пользователей
+ * Режимы: пропускная способность и распределение времени (перцентили).
+ * Аллокации - профилировщик gc (-prof gc)
+ */
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import berezin.school.repositories.UserRepository;
+import berezin.school.user.User;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserRepositoryBenchmark {
+
+	/** Количество пользователей в таблице */
+	@Param({ "10000" })
+	public int users;
+
+	/** Кэш второго уровня и кэш запросов Hibernate */
+	@Param({ "false" })
+	public boolean hibernateCache;
+
+	private ConfigurableApplicationContext context;
+
+	private UserRepository repository;
+
+	/** Счетчик логинов новых пользователей */
+	private final AtomicInteger created = new AtomicInteger();
+
+	@Setup(Level.Trial)
+	public void start() {
+		context = SchoolContext.start(users, hibernateCache);
+		repository = context.getBean(UserRepository.class);
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		context.close();
+	}
+
+	/** Пользователь, удаляемый в бенчмарке deleteByLogin (создается перед каждым вызовом) */
+	@State(Scope.Thread)
+	public static class Victim {
+
+		String login;
+
+		@Setup(Level.Invocation)
+		public void create(UserRepositoryBenchmark benchmark) {
+			login = String.format("d%07d", benchmark.created.incrementAndGet());
+			benchmark.repository.save(newUser(login));
+		}
+	}
+
+	@Benchmark
+	public List<User> findAllLoginNotLikeAdmin() {
+		return repository.findAllLoginNotLikeAdmin();
+	}
+
+	@Benchmark
+	public User findByLogin() {
+		return repository.findByLogin(SchoolContext.login(ThreadLocalRandom.current().nextInt(users)));
+	}
+
+	/** Регистрация: проверка логина и вставка нового пользователя */
+	@Benchmark
+	public User countByLoginAndSave() {
+		String login = String.format("n%07d", created.incrementAndGet());
+		if (repository.countByLogin(login) > 0) {
+			return null;
+		}
+		return repository.save(newUser(login));
+	}
+
+	@Benchmark
+	public int deleteByLogin(Victim victim) {
+		return repository.deleteByLogin(victim.login);
+	}
+
+	/** Новый пользователь с заданным логином */
+	private static User newUser(String login) {
+		User user = new User();
+		user.setLogin(login);
+		user.setPassword("password");
+		user.setName("Name");
+		user.setSurName("Surname");
+		return user;
+	}
+
+}
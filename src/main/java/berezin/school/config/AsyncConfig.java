@@ -0,0 +1,75 @@
+package berezin.school.config;
+/**
+ * Класс AsyncConfig конфигурации асинхронной обработки запросов.
+ * Обращения к БД контроллеров выполняются в пуле dbExecutor, каждому потоку пула
+ * (school.db-executor.pool-size) доступно соединение пула БД (DataSourceConfig: пул
+ * соединений больше на резерв для других обращений), поэтому задачи ожидают в очереди
+ * пула, а не соединения. Потоки Tomcat освобождаются на время
+ * обращения к БД, страницы без обращения к БД отвечают при медленной БД.
+ * При заполнении очереди запрос отклоняется (статус 503).
+ * В режиме виртуальных потоков (school.virtual-threads.enabled, VirtualThreadConfig)
+ * каждое обращение к БД выполняется в своем виртуальном потоке, количество одновременных
+ * обращений ограничено семафором того же размера.
+ * События изменений пользователей (UserEventBroadcaster) формируются в отдельном пуле
+ * eventExecutor и отправляются подписчикам в пуле eventSenderExecutor: медленный клиент
+ * не занимает потоки БД, запросов и формирования событий
+ */
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class AsyncConfig {
+
+	/**
+	 * Пул обращений к БД
+	 *
+	 * @param poolSize количество потоков (максимальное количество соединений пула БД)
+	 * @param queueCapacity размер очереди ожидающих запросов
+	 * @param virtualThreads виртуальный поток на задачу вместо пула потоков
+	 * @return InstrumentedExecutor
+	 */
+	@Bean
+	public InstrumentedExecutor dbExecutor(
+			@Value("${school.db-executor.pool-size:10}") int poolSize,
+			@Value("${school.db-executor.queue-capacity:500}") int queueCapacity,
+			@Value("${school.virtual-threads.enabled:false}") boolean virtualThreads) {
+
+		if (virtualThreads) {
+			return new VirtualThreadTaskExecutor("db", poolSize, queueCapacity);
+		}
+		return new InstrumentedTaskExecutor("db", poolSize, queueCapacity);
+	}
+
+	/**
+	 * Пул рассылки событий изменений пользователей (server-sent events)
+	 *
+	 * @param poolSize количество потоков (одновременно формируемых событий)
+	 * @param queueCapacity размер очереди задач рассылки
+	 * @return InstrumentedExecutor
+	 */
+	@Bean
+	public InstrumentedExecutor eventExecutor(
+			@Value("${school.user-events.pool-size:2}") int poolSize,
+			@Value("${school.user-events.queue-capacity:1000}") int queueCapacity) {
+
+		return new InstrumentedTaskExecutor("events", poolSize, queueCapacity);
+	}
+
+	/**
+	 * Пул отправки событий подписчикам (server-sent events). Запись клиенту блокирующая,
+	 * поэтому у каждого отправляющего подписчика свой поток, без очереди задач: клиент,
+	 * переставший читать, не задерживает отправку другим подписчикам
+	 *
+	 * @param maxSenders максимальное количество одновременно отправляющих подписчиков
+	 * @return InstrumentedExecutor
+	 */
+	@Bean
+	public InstrumentedExecutor eventSenderExecutor(
+			@Value("${school.user-events.max-senders:20}") int maxSenders) {
+
+		return new InstrumentedTaskExecutor("event-sender", maxSenders, 0);
+	}
+
+}
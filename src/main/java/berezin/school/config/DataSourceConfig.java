@@ -0,0 +1,119 @@
+package berezin.school.config;
+/**
+ * Класс DataSourceConfig конфигурации пула соединений БД (HikariCP).
+ * URL и учетные данные - spring.datasource.*, параметры пула - spring.datasource.hikari.*
+ * (размер, таймауты, обнаружение утечек соединений, свойства драйвера postgresql).
+ * Метрики пула (время получения соединения, время использования, создание соединений,
+ * таймауты, активные/свободные/ожидающие) записываются в реестр metricRegistry.
+ * Размер пула: потоки dbExecutor (school.db-executor.pool-size) плюс резерв
+ * school.datasource.reserved-connections для обращений к БД вне dbExecutor: рассылка событий
+ * (eventExecutor, school.user-events.pool-size), доставка журнала изменений (1 поток),
+ * перестроение фильтра логинов (1 поток), короткие запросы проверки пароля и синхронных
+ * обработчиков. Без резерва эти обращения ожидали бы соединения наравне с задачами dbExecutor
+ * и при полной загрузке пула завершались бы по connection-timeout.
+ * Явное значение spring.datasource.hikari.maximum-pool-size заменяет расчет
+ * Реплики для чтения (school.datasource.replica.urls, через запятую) получают пулы
+ * с параметрами основного пула; транзакции только для чтения выполняются на репликах
+ * (ReadWriteRoutingDataSource), изменения и миграции - на основной БД; транзакции на репликах
+ * не записывают в кэши Hibernate (ReplicaCacheTransactionManager)
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+import com.codahale.metrics.MetricRegistry;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+@Configuration
+public class DataSourceConfig {
+
+	/**
+	 * Реестр метрик пула соединений
+	 *
+	 * @return MetricRegistry
+	 */
+	@Bean
+	public MetricRegistry metricRegistry() {
+		return new MetricRegistry();
+	}
+
+	/**
+	 * Параметры пула соединений основной БД: spring.datasource.* и spring.datasource.hikari.*
+	 * Размер пула по умолчанию (пул фиксированного размера) - потоки dbExecutor плюс резерв
+	 *
+	 * @param properties свойства spring.datasource.*
+	 * @param metricRegistry реестр метрик пула
+	 * @param dbExecutorSize потоки пула dbExecutor
+	 * @param reserved соединения для обращений к БД вне dbExecutor
+	 * @return HikariConfig
+	 */
+	@Bean
+	@ConfigurationProperties("spring.datasource.hikari")
+	public HikariConfig hikariConfig(DataSourceProperties properties, MetricRegistry metricRegistry,
+			@Value("${school.db-executor.pool-size:10}") int dbExecutorSize,
+			@Value("${school.datasource.reserved-connections:5}") int reserved) {
+
+		HikariConfig config = new HikariConfig();
+		config.setMaximumPoolSize(dbExecutorSize + reserved);
+		config.setMinimumIdle(dbExecutorSize + reserved);
+		config.setDriverClassName(properties.determineDriverClassName());
+		config.setJdbcUrl(properties.determineUrl());
+		config.setUsername(properties.determineUsername());
+		config.setPassword(properties.determinePassword());
+		config.setMetricRegistry(metricRegistry);
+		return config;
+	}
+
+	/**
+	 * Источник данных приложения (JPA, Flyway, JdbcTemplate): пулы основной БД и реплик
+	 *
+	 * @param hikariConfig параметры пула основной БД
+	 * @param urls URL реплик через запятую (пусто - реплик нет)
+	 * @param username пользователь реплик
+	 * @param password пароль реплик
+	 * @return ReadWriteRoutingDataSource
+	 */
+	@Bean
+	public ReadWriteRoutingDataSource dataSource(HikariConfig hikariConfig,
+			@Value("${school.datasource.replica.urls:}") String[] urls,
+			@Value("${school.datasource.replica.username:${spring.datasource.username:}}") String username,
+			@Value("${school.datasource.replica.password:${spring.datasource.password:}}") String password) {
+
+		List<HikariDataSource> replicas = new ArrayList<>();
+		for (String url : urls) {
+			if (url.trim().isEmpty()) {
+				continue;
+			}
+			HikariConfig config = new HikariConfig();
+			hikariConfig.copyStateTo(config);
+			config.setPoolName(hikariConfig.getPoolName() + "-replica-" + replicas.size());
+			config.setJdbcUrl(url.trim());
+			config.setUsername(username);
+			config.setPassword(password);
+			config.setReadOnly(true);
+			replicas.add(new HikariDataSource(config));
+		}
+		return new ReadWriteRoutingDataSource(new HikariDataSource(hikariConfig), replicas);
+	}
+
+	/**
+	 * Менеджер транзакций JPA: транзакции на репликах только читают кэши Hibernate
+	 *
+	 * @param entityManagerFactory фабрика EntityManager
+	 * @param dataSource источник данных с репликами
+	 * @return ReplicaCacheTransactionManager
+	 */
+	@Bean
+	public PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory,
+			ReadWriteRoutingDataSource dataSource) {
+		return new ReplicaCacheTransactionManager(entityManagerFactory, dataSource);
+	}
+
+}
@@ -0,0 +1,22 @@
+package berezin.school.config;
+/**
+ * Интерфейс InstrumentedExecutor - пул задач со статистикой.
+ * Реализации: InstrumentedTaskExecutor (пул потоков платформы),
+ * VirtualThreadTaskExecutor (виртуальный поток на задачу с ограничением параллельности).
+ * При перегрузке новые задачи отклоняются (TaskRejectedException)
+ */
+
+import java.util.Map;
+import org.springframework.core.task.AsyncTaskExecutor;
+
+public interface InstrumentedExecutor extends AsyncTaskExecutor {
+
+	/**
+	 * Статистика пула
+	 *
+	 * @return потоки, очередь, количество задач, среднее и максимальное время ожидания,
+	 *         среднее время выполнения (мс)
+	 */
+	Map<String, Object> statistics();
+
+}
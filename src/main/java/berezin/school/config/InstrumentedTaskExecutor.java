@@ -0,0 +1,53 @@
+package berezin.school.config;
+/**
+ * Класс InstrumentedTaskExecutor - пул потоков с учетом статистики задач:
+ * время ожидания в очереди, время выполнения, выполненные и отклоненные задачи.
+ * При заполнении очереди новые задачи отклоняются (TaskRejectedException)
+ */
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+public class InstrumentedTaskExecutor extends ThreadPoolTaskExecutor implements InstrumentedExecutor {
+
+	private static final long serialVersionUID = 1L;
+
+	private final transient TaskStatistics tasks = new TaskStatistics();
+
+	/**
+	 * Конструктор
+	 *
+	 * @param name префикс имен потоков
+	 * @param threads количество потоков
+	 * @param queueCapacity размер очереди
+	 */
+	public InstrumentedTaskExecutor(String name, int threads, int queueCapacity) {
+
+		setCorePoolSize(threads);
+		setMaxPoolSize(threads);
+		setQueueCapacity(queueCapacity);
+		setThreadNamePrefix(name + "-");
+		setRejectedExecutionHandler((task, executor) -> {
+			tasks.reject();
+			new ThreadPoolExecutor.AbortPolicy().rejectedExecution(task, executor);
+		});
+		setTaskDecorator(tasks::decorate);
+	}
+
+	@Override
+	public Map<String, Object> statistics() {
+
+		ThreadPoolExecutor pool = getThreadPoolExecutor();
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("active", pool.getActiveCount());
+		stats.put("poolSize", pool.getPoolSize());
+		stats.put("maxPoolSize", pool.getMaximumPoolSize());
+		stats.put("queued", pool.getQueue().size());
+		stats.put("queueRemaining", pool.getQueue().remainingCapacity());
+		tasks.putTo(stats);
+		return stats;
+	}
+
+}
@@ -3,14 +3,33 @@ package berezin.school.config;
 * Класс MVCConfig конфигурации расположения ресурсов проекта 
 * (вместо использования  mvc-dispatcher-servlet.xml ).
 * Переопределение метода addViewControllers
+* Регистрация перехватчиков ReadYourWritesInterceptor (выбор основной БД или реплики)
+* и SessionLoginInterceptor (сессия пользователя после входа)
+* Асинхронные ответы MVC (потоковая запись ответа API, StreamingResponseBody) выполняются
+* в пуле dbExecutor: ответ записывается по мере чтения из БД
 */
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.ViewControllerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+import berezin.school.controllers.SessionLoginInterceptor;
 
 @Configuration
 public class MVCConfig extends WebMvcConfigurerAdapter {
 	
+	@Autowired
+	private ReadYourWritesInterceptor readYourWritesInterceptor;
+	
+	@Autowired
+	private SessionLoginInterceptor sessionLoginInterceptor;
+	
+	@Autowired
+	@Qualifier("dbExecutor")
+	private InstrumentedExecutor dbExecutor;
+	
 	/**
 	* Метод addViewControllers
 	* Указание соостветствия пути (URL) - представлению (шаблону, HTML страницы)
@@ -21,4 +40,15 @@ public class MVCConfig extends WebMvcConfigurerAdapter {
 		registry.addRedirectViewController("/", "/index");
 	}
 
+	@Override
+	public void addInterceptors(InterceptorRegistry registry) {
+		registry.addInterceptor(readYourWritesInterceptor);
+		registry.addInterceptor(sessionLoginInterceptor);
+	}
+
+	@Override
+	public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+		configurer.setTaskExecutor(dbExecutor);
+	}
+
 }
@@ -0,0 +1,47 @@
+package berezin.school.config;
+/**
+ * Класс PasswordConfig конфигурации хранения паролей.
+ * Алгоритм хэширования - бин PasswordEncoder (BCrypt, стоимость school.password.strength),
+ * может быть заменен другой реализацией PasswordEncoder.
+ * Проверка паролей выполняется в отдельном ограниченном пуле потоков passwordExecutor:
+ * при заполнении очереди новые задачи отклоняются (AbortPolicy), потоки Tomcat
+ * не блокируются вычислением хэшей при массовом входе пользователей
+ */
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+@Configuration
+public class PasswordConfig {
+
+	/**
+	 * Хэширование паролей BCrypt
+	 * 
+	 * @param strength стоимость (log2 количества раундов), 4..31
+	 * @return PasswordEncoder
+	 */
+	@Bean
+	public PasswordEncoder passwordEncoder(@Value("${school.password.strength:10}") int strength) {
+		return new BCryptPasswordEncoder(strength);
+	}
+
+	/**
+	 * Пул проверки паролей
+	 * 
+	 * @param poolSize количество потоков (0 - по количеству процессоров)
+	 * @param queueCapacity размер очереди ожидающих проверок
+	 * @return InstrumentedTaskExecutor
+	 */
+	@Bean
+	public InstrumentedTaskExecutor passwordExecutor(
+			@Value("${school.password.pool-size:0}") int poolSize,
+			@Value("${school.password.queue-capacity:200}") int queueCapacity) {
+
+		int threads = poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors();
+		return new InstrumentedTaskExecutor("password", threads, queueCapacity);
+	}
+
+}
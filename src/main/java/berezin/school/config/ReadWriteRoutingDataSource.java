@@ -0,0 +1,106 @@
+package berezin.school.config;
+/**
+ * Класс ReadWriteRoutingDataSource - маршрутизация соединений между основной БД и репликами.
+ * Транзакция только для чтения (@Transactional(readOnly = true)) получает соединение реплики
+ * (реплики выбираются по кругу), остальные обращения и чтение с признаком
+ * ReplicaRouting.isPrimaryRequired - соединение основной БД. Без реплик все соединения - основной БД.
+ * Признак readOnly устанавливается после начала транзакции, поэтому соединение
+ * запрашивается при первом обращении к БД (LazyConnectionDataSourceProxy).
+ * Чтения с реплики не заполняют кэши Hibernate (ReplicaCacheTransactionManager)
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import com.zaxxer.hikari.HikariDataSource;
+
+public class ReadWriteRoutingDataSource extends LazyConnectionDataSourceProxy implements DisposableBean {
+
+	private static final String PRIMARY = "primary";
+
+	private final HikariDataSource primary;
+
+	private final List<HikariDataSource> replicas;
+
+	/** Счетчик выбора реплики по кругу */
+	private final AtomicInteger next = new AtomicInteger();
+
+	/**
+	 * Конструктор
+	 *
+	 * @param primary основная БД
+	 * @param replicas реплики (может быть пустым)
+	 */
+	public ReadWriteRoutingDataSource(HikariDataSource primary, List<HikariDataSource> replicas) {
+
+		this.primary = primary;
+		this.replicas = Collections.unmodifiableList(new ArrayList<>(replicas));
+		Map<Object, Object> targets = new HashMap<>();
+		targets.put(PRIMARY, primary);
+		for (int i = 0; i < replicas.size(); i++) {
+			targets.put(i, replicas.get(i));
+		}
+		Router router = new Router();
+		router.setTargetDataSources(targets);
+		router.setDefaultTargetDataSource(primary);
+		router.afterPropertiesSet();
+		setTargetDataSource(router);
+	}
+
+	/** Выбор БД для нового соединения */
+	private class Router extends AbstractRoutingDataSource {
+
+		@Override
+		protected Object determineCurrentLookupKey() {
+
+			if (!isReplicaRead(TransactionSynchronizationManager.isCurrentTransactionReadOnly())) {
+				return PRIMARY;
+			}
+			return (next.getAndIncrement() & Integer.MAX_VALUE) % replicas.size();
+		}
+	}
+
+	/**
+	 * Выполняется ли транзакция текущего потока на реплике
+	 *
+	 * @param readOnly транзакция только для чтения
+	 * @return true - соединение реплики
+	 */
+	public boolean isReplicaRead(boolean readOnly) {
+		return readOnly && !replicas.isEmpty() && !ReplicaRouting.isPrimaryRequired();
+	}
+
+	/**
+	 * Пул соединений основной БД
+	 *
+	 * @return HikariDataSource
+	 */
+	public HikariDataSource getPrimary() {
+		return primary;
+	}
+
+	/**
+	 * Пулы соединений реплик
+	 *
+	 * @return реплики в порядке school.datasource.replica.urls
+	 */
+	public List<HikariDataSource> getReplicas() {
+		return replicas;
+	}
+
+	/** Закрытие пулов соединений */
+	@Override
+	public void destroy() {
+
+		replicas.forEach(HikariDataSource::close);
+		primary.close();
+	}
+
+}
@@ -0,0 +1,89 @@
+package berezin.school.config;
+/**
+ * Класс ReadYourWritesInterceptor - чтение собственных изменений при чтении с реплик.
+ * Запросы, изменяющие данные (POST, PUT, PATCH, DELETE), выполняются с основной БД.
+ * Время изменения отмечается в существующей сессии пользователя только после успешного
+ * изменения: ответ без ошибки (статус 2xx, 3xx), для страниц - перенаправление (форма,
+ * отклоненная валидацией, отображается повторно). Вход в систему (/login) данные не изменяет.
+ * Чтение в течение school.datasource.replica.read-your-writes-millis после изменения
+ * (задержка репликации) также выполняется с основной БД
+ */
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+import org.springframework.web.servlet.view.UrlBasedViewResolver;
+
+@Component
+public class ReadYourWritesInterceptor extends HandlerInterceptorAdapter {
+
+	/** Атрибут сессии: время последнего изменения данных пользователем, мс */
+	private static final String SESSION_LAST_WRITE = "lastWriteMillis";
+
+	/** Атрибут запроса: изменение отклонено (страница отображена без перенаправления) */
+	private static final String WRITE_REJECTED = ReadYourWritesInterceptor.class.getName() + ".rejected";
+
+	/** Вход в систему: POST без изменения данных */
+	private static final String LOGIN_PATH = "/login";
+
+	@Value("${school.datasource.replica.read-your-writes-millis:5000}")
+	private long readYourWritesMillis;
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+
+		if (isWrite(request)) {
+			ReplicaRouting.setPrimaryRequired(true);
+			return true;
+		}
+		HttpSession session = request.getSession(false);
+		Long lastWrite = session == null ? null : (Long) session.getAttribute(SESSION_LAST_WRITE);
+		ReplicaRouting.setPrimaryRequired(
+				lastWrite != null && System.currentTimeMillis() - lastWrite < readYourWritesMillis);
+		return true;
+	}
+
+	@Override
+	public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler,
+			ModelAndView modelAndView) {
+
+		/** Страница вместо перенаправления - данные не изменены (ошибка валидации, конфликт версий) */
+		if (modelAndView != null && modelAndView.getViewName() != null
+				&& !modelAndView.getViewName().startsWith(UrlBasedViewResolver.REDIRECT_URL_PREFIX)) {
+			request.setAttribute(WRITE_REJECTED, Boolean.TRUE);
+		}
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+			Exception ex) {
+
+		/** Отсчет задержки репликации - от завершения изменения */
+		if (isWrite(request) && !LOGIN_PATH.equals(request.getServletPath()) && ex == null
+				&& response.getStatus() < HttpServletResponse.SC_BAD_REQUEST
+				&& request.getAttribute(WRITE_REJECTED) == null) {
+			HttpSession session = request.getSession(false);
+			if (session != null) {
+				session.setAttribute(SESSION_LAST_WRITE, System.currentTimeMillis());
+			}
+		}
+		ReplicaRouting.setPrimaryRequired(false);
+	}
+
+	@Override
+	public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+			Object handler) {
+		ReplicaRouting.setPrimaryRequired(false);
+	}
+
+	private static boolean isWrite(HttpServletRequest request) {
+
+		String method = request.getMethod();
+		return !"GET".equals(method) && !"HEAD".equals(method) && !"OPTIONS".equals(method);
+	}
+
+}
@@ -0,0 +1,59 @@
+package berezin.school.config;
+/**
+ * Класс ReplicaCacheTransactionManager - менеджер транзакций JPA с учетом реплик для кэша
+ * второго уровня и кэша запросов Hibernate (регион User, StandardQueryCache).
+ * Реплика отстает от основной БД: строка, прочитанная с реплики до применения изменения,
+ * сохраненная в кэше, выдавалась бы всем потокам до вытеснения (до timeToLiveSeconds региона),
+ * в том числе чтениям с основной БД. Поэтому в транзакции, выполняемой на реплике
+ * (ReadWriteRoutingDataSource), EntityManager только читает кэши (CacheStoreMode.BYPASS,
+ * режим сессии Hibernate CacheMode.GET): результаты из кэша используются, прочитанные с реплики
+ * сущности и результаты запросов в кэш не записываются. Кэши заполняются только чтением
+ * с основной БД и изменениями. Режим задается свойством EntityManager, а не только режимом
+ * сессии: EntityManager.find устанавливает режим сессии по своим свойствам
+ */
+
+import javax.persistence.CacheStoreMode;
+import javax.persistence.EntityManagerFactory;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class ReplicaCacheTransactionManager extends JpaTransactionManager {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Свойство EntityManager: запись в кэш второго уровня и кэш запросов */
+	private static final String STORE_MODE = "javax.persistence.cache.storeMode";
+
+	private final transient ReadWriteRoutingDataSource dataSource;
+
+	/**
+	 * Конструктор
+	 *
+	 * @param entityManagerFactory фабрика EntityManager
+	 * @param dataSource источник данных с репликами
+	 */
+	public ReplicaCacheTransactionManager(EntityManagerFactory entityManagerFactory,
+			ReadWriteRoutingDataSource dataSource) {
+
+		super(entityManagerFactory);
+		this.dataSource = dataSource;
+	}
+
+	/**
+	 * Начало транзакции: режим записи в кэш по БД транзакции (EntityManager может быть открыт
+	 * до транзакции и использоваться несколькими транзакциями, режим устанавливается каждый раз)
+	 */
+	@Override
+	protected void doBegin(Object transaction, TransactionDefinition definition) {
+
+		super.doBegin(transaction, definition);
+		EntityManagerHolder holder = (EntityManagerHolder) TransactionSynchronizationManager
+				.getResource(getEntityManagerFactory());
+		holder.getEntityManager().setProperty(STORE_MODE,
+				dataSource.isReplicaRead(definition.isReadOnly()) ? CacheStoreMode.BYPASS : CacheStoreMode.USE);
+	}
+	/** конец doBegin() */
+
+}
@@ -0,0 +1,76 @@
+package berezin.school.config;
+/**
+ * Класс ReplicaRouting - выбор БД для чтения в текущем потоке.
+ * Транзакции только для чтения выполняются на реплике (ReadWriteRoutingDataSource),
+ * кроме потоков, для которых требуется основная БД: запросы, изменяющие данные,
+ * и чтение сразу после изменений пользователя (ReadYourWritesInterceptor),
+ * проверка паролей. Признак не наследуется потоками пулов - задача, передаваемая в пул,
+ * оборачивается методом propagate
+ */
+
+import java.util.function.Supplier;
+
+public final class ReplicaRouting {
+
+	private static final ThreadLocal<Boolean> PRIMARY_REQUIRED = new ThreadLocal<>();
+
+	private ReplicaRouting() {
+	}
+
+	/**
+	 * Требуется ли основная БД для чтения в текущем потоке
+	 *
+	 * @return true - чтение с основной БД
+	 */
+	public static boolean isPrimaryRequired() {
+		return Boolean.TRUE.equals(PRIMARY_REQUIRED.get());
+	}
+
+	/**
+	 * Выполнение задачи с чтением с основной БД
+	 *
+	 * @param task задача
+	 * @return результат задачи
+	 */
+	public static <T> T onPrimary(Supplier<T> task) {
+		return call(true, task);
+	}
+
+	/**
+	 * Задача для выполнения в другом потоке с выбором БД текущего потока
+	 *
+	 * @param task задача
+	 * @return задача, выполняемая с признаком основной БД текущего потока
+	 */
+	public static <T> Supplier<T> propagate(Supplier<T> task) {
+
+		boolean primary = isPrimaryRequired();
+		return () -> call(primary, task);
+	}
+
+	/** Установка признака основной БД для потока обработки запроса */
+	static void setPrimaryRequired(boolean primary) {
+
+		if (primary) {
+			PRIMARY_REQUIRED.set(Boolean.TRUE);
+		} else {
+			PRIMARY_REQUIRED.remove();
+		}
+	}
+
+	private static <T> T call(boolean primary, Supplier<T> task) {
+
+		Boolean previous = PRIMARY_REQUIRED.get();
+		setPrimaryRequired(primary || Boolean.TRUE.equals(previous));
+		try {
+			return task.get();
+		} finally {
+			if (previous == null) {
+				PRIMARY_REQUIRED.remove();
+			} else {
+				PRIMARY_REQUIRED.set(previous);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+package berezin.school.config;
+/**
+ * Класс TaskStatistics - счетчики задач пула: выполненные и отклоненные задачи,
+ * время ожидания (от передачи задачи в пул до начала выполнения) и время выполнения
+ */
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+final class TaskStatistics {
+
+	private final LongAdder completed = new LongAdder();
+
+	private final LongAdder rejected = new LongAdder();
+
+	/** Суммарное и максимальное время ожидания, нс */
+	private final LongAdder waitNanos = new LongAdder();
+
+	private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+
+	/** Суммарное время выполнения, нс */
+	private final LongAdder runNanos = new LongAdder();
+
+	/**
+	 * Задача с учетом времени ожидания и выполнения.
+	 * Вызывается при передаче задачи в пул (начало ожидания)
+	 *
+	 * @param task задача
+	 * @return задача с учетом статистики
+	 */
+	Runnable decorate(Runnable task) {
+
+		long queued = System.nanoTime();
+		return () -> {
+			long started = System.nanoTime();
+			waitNanos.add(started - queued);
+			maxWaitNanos.accumulate(started - queued);
+			try {
+				task.run();
+			} finally {
+				runNanos.add(System.nanoTime() - started);
+				completed.increment();
+			}
+		};
+	}
+
+	/** Учет отклоненной задачи */
+	void reject() {
+		rejected.increment();
+	}
+
+	/**
+	 * Добавление счетчиков в статистику пула
+	 *
+	 * @param stats статистика пула
+	 */
+	void putTo(Map<String, Object> stats) {
+
+		long done = completed.sum();
+		stats.put("completed", done);
+		stats.put("rejected", rejected.sum());
+		stats.put("avgWaitMillis", done == 0 ? 0.0 : millis(waitNanos.sum()) / done);
+		stats.put("maxWaitMillis", millis(maxWaitNanos.get()));
+		stats.put("avgRunMillis", done == 0 ? 0.0 : millis(runNanos.sum()) / done);
+	}
+
+	private static double millis(long nanos) {
+		return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+}
@@ -0,0 +1,50 @@
+package berezin.school.config;
+/**
+ * Класс VirtualThreadConfig конфигурации режима виртуальных потоков (Java 21+).
+ * Включается свойством school.virtual-threads.enabled=true: запросы обрабатываются
+ * встроенным Tomcat в виртуальных потоках (пул потоков server.tomcat.max-threads не используется),
+ * обращения к БД - в виртуальных потоках dbExecutor (AsyncConfig).
+ * Проверка паролей остается в пуле потоков платформы (вычисления, а не ожидание).
+ * При запуске на Java 8..20 приложение не запускается (IllegalStateException)
+ */
+
+import java.util.concurrent.ExecutorService;
+import org.apache.coyote.AbstractProtocol;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.embedded.EmbeddedServletContainerCustomizer;
+import org.springframework.boot.context.embedded.tomcat.TomcatEmbeddedServletContainerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConditionalOnProperty(name = "school.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+	/**
+	 * Пул обработки запросов Tomcat: виртуальный поток на запрос
+	 *
+	 * @return ExecutorService
+	 */
+	@Bean(destroyMethod = "shutdown")
+	public ExecutorService httpExecutor() {
+		return VirtualThreads.newThreadPerTaskExecutor("http");
+	}
+
+	/**
+	 * Подключение пула httpExecutor к коннектору Tomcat
+	 *
+	 * @param httpExecutor пул обработки запросов
+	 * @return EmbeddedServletContainerCustomizer
+	 */
+	@Bean
+	public EmbeddedServletContainerCustomizer virtualThreadConnector(ExecutorService httpExecutor) {
+
+		return container -> {
+			if (container instanceof TomcatEmbeddedServletContainerFactory) {
+				((TomcatEmbeddedServletContainerFactory) container).addConnectorCustomizers(
+						connector -> ((AbstractProtocol<?>) connector.getProtocolHandler()).setExecutor(httpExecutor));
+			}
+		};
+	}
+
+}
@@ -0,0 +1,124 @@
+package berezin.school.config;
+/**
+ * Класс VirtualThreadTaskExecutor - пул "виртуальный поток на задачу" с ограничением
+ * количества одновременно выполняемых задач семафором (school.db-executor.pool-size,
+ * пул соединений БД больше на резерв для других обращений).
+ * Задача, не получившая разрешения, ожидает в своем виртуальном потоке (поток платформы
+ * не занимается). Количество ожидающих задач ограничено размером очереди,
+ * сверх него новые задачи отклоняются (TaskRejectedException)
+ */
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.task.TaskRejectedException;
+
+public class VirtualThreadTaskExecutor implements InstrumentedExecutor, DisposableBean {
+
+	private final ExecutorService executor;
+
+	/** Разрешения на выполнение задачи */
+	private final Semaphore permits;
+
+	private final int concurrency;
+
+	private final int queueCapacity;
+
+	/** Задачи, ожидающие разрешения */
+	private final AtomicInteger queued = new AtomicInteger();
+
+	private final TaskStatistics tasks = new TaskStatistics();
+
+	/**
+	 * Конструктор
+	 *
+	 * @param name префикс имен потоков
+	 * @param concurrency количество одновременно выполняемых задач
+	 * @param queueCapacity количество задач, ожидающих разрешения
+	 * @throws IllegalStateException виртуальные потоки не поддерживаются JVM
+	 */
+	public VirtualThreadTaskExecutor(String name, int concurrency, int queueCapacity) {
+
+		this.executor = VirtualThreads.newThreadPerTaskExecutor(name);
+		this.permits = new Semaphore(concurrency, true);
+		this.concurrency = concurrency;
+		this.queueCapacity = queueCapacity;
+	}
+
+	@Override
+	public void execute(Runnable task) {
+
+		if (queued.incrementAndGet() > queueCapacity + permits.availablePermits()) {
+			queued.decrementAndGet();
+			tasks.reject();
+			throw new TaskRejectedException("Очередь пула заполнена (" + queueCapacity + "), задача отклонена");
+		}
+		Runnable measured = tasks.decorate(task);
+		try {
+			executor.execute(() -> {
+				permits.acquireUninterruptibly();
+				queued.decrementAndGet();
+				try {
+					measured.run();
+				} finally {
+					permits.release();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			queued.decrementAndGet();
+			tasks.reject();
+			throw new TaskRejectedException("Пул остановлен, задача отклонена", e);
+		}
+	}
+
+	@Override
+	public void execute(Runnable task, long startTimeout) {
+		execute(task);
+	}
+
+	@Override
+	public Future<?> submit(Runnable task) {
+
+		FutureTask<Object> future = new FutureTask<>(task, null);
+		execute(future);
+		return future;
+	}
+
+	@Override
+	public <T> Future<T> submit(Callable<T> task) {
+
+		FutureTask<T> future = new FutureTask<>(task);
+		execute(future);
+		return future;
+	}
+
+	@Override
+	public Map<String, Object> statistics() {
+
+		int waiting = queued.get();
+		int active = concurrency - permits.availablePermits();
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("virtualThreads", true);
+		stats.put("active", active);
+		stats.put("poolSize", active + waiting);
+		stats.put("maxPoolSize", concurrency);
+		stats.put("queued", waiting);
+		stats.put("queueRemaining", Math.max(0, queueCapacity - waiting));
+		tasks.putTo(stats);
+		return stats;
+	}
+
+	/** Остановка пула: новые задачи не принимаются, начатые выполняются */
+	@Override
+	public void destroy() {
+		executor.shutdown();
+	}
+
+}
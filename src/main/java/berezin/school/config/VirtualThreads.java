@@ -0,0 +1,40 @@
+package berezin.school.config;
+/**
+ * Класс VirtualThreads - создание пулов виртуальных потоков (Java 21+).
+ * Проект компилируется для Java 8, поэтому API виртуальных потоков
+ * (Thread.ofVirtual, Executors.newThreadPerTaskExecutor) вызывается через reflection
+ */
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+final class VirtualThreads {
+
+	private VirtualThreads() {
+	}
+
+	/**
+	 * Пул "виртуальный поток на задачу"
+	 *
+	 * @param name префикс имен потоков
+	 * @return ExecutorService
+	 * @throws IllegalStateException виртуальные потоки не поддерживаются JVM
+	 */
+	static ExecutorService newThreadPerTaskExecutor(String name) {
+
+		try {
+			Class<?> builderType = Class.forName("java.lang.Thread$Builder$OfVirtual");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderType.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0L);
+			ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+			return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+					.invoke(null, factory);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Виртуальные потоки не поддерживаются JVM (требуется Java 21+, версия "
+					+ System.getProperty("java.version") + ")", e);
+		}
+	}
+	/** конец newThreadPerTaskExecutor() */
+
+}
@@ -0,0 +1,286 @@
+package berezin.school.controllers;
+/**
+ * Контроллер JSON API пользователей (мобильный клиент).
+ * http://url_ресурса/api/users - список пользователей постранично (keyset-пагинация по id),
+ * http://url_ресурса/api/users/{логин} - профиль пользователя,
+ * http://url_ресурса/api/users/bulk - массовое добавление и удаление (администратор).
+ * Пароли не выдаются: список и профиль строятся проекциями UserApiService.
+ * Список записывается потоковым генератором Jackson по мере чтения из БД в пуле dbExecutor
+ * (StreamingResponseBody, MVCConfig), остальные обращения к БД - CompletableFuture в том же пуле.
+ * Права доступа - по сессии, как у страниц ApplicationController.
+ * Ошибки возвращаются в JSON: message и статус ответа
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import javax.servlet.http.HttpSession;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.async.AsyncRequestTimeoutException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import berezin.school.config.InstrumentedExecutor;
+import berezin.school.config.ReplicaRouting;
+import berezin.school.events.UserChangedEvent;
+import berezin.school.repositories.UserRepository;
+import berezin.school.services.UserApiService;
+import berezin.school.services.UserImportService;
+import berezin.school.services.UserListVersion;
+import berezin.school.services.UserProfileCache;
+import berezin.school.user.User;
+
+@RestController
+@RequestMapping("/api/users")
+public class ApiController {
+
+	@Autowired
+	private UserRepository users;
+
+	/** JSON представление пользователей (потоковая запись списка, профиль без пароля) */
+	@Autowired
+	private UserApiService userApi;
+
+	/** Массовое добавление пользователей */
+	@Autowired
+	private UserImportService userImport;
+
+	/** Кэш профилей пользователей */
+	@Autowired
+	private UserProfileCache profiles;
+
+	/** Версия списка пользователей (условные GET запросы списка) */
+	@Autowired
+	private UserListVersion listVersion;
+
+	/** Публикация событий изменения пользователей (согласование кэшей) */
+	@Autowired
+	private ApplicationEventPublisher events;
+
+	/** Пул обращений к БД асинхронных обработчиков */
+	@Autowired
+	@Qualifier("dbExecutor")
+	private InstrumentedExecutor dbExecutor;
+
+	/**
+	 * Список пользователей (без администратора), постранично. Обработка GET запроса
+	 * http://url_ресурса/api/users?after={id}&size={размер страницы}
+	 * Ответ: {"users": [{id, login, name, surName, birthDate, version}, ...], "size", "hasNext",
+	 * "nextAfter" - значение after следующей страницы}. Ответ записывается по мере чтения из БД
+	 *
+	 * @param after курсор страницы (id последнего пользователя предыдущей страницы)
+	 * @param size размер страницы, приводится к диапазону 1..MAX_PAGE_SIZE
+	 * @param request запрос, используется для проверки версии списка (If-None-Match, If-Modified-Since)
+	 * @return страница пользователей (JSON, асинхронно, пул dbExecutor)
+	 * @return статус 304 без обращения к БД, если список не изменился
+	 */
+	@RequestMapping(method = RequestMethod.GET)
+	public ResponseEntity<StreamingResponseBody> users(
+			@RequestParam(value = "after", required = false, defaultValue = "0") int after,
+			@RequestParam(value = "size", required = false,
+					defaultValue = "" + ApplicationController.DEFAULT_PAGE_SIZE) int size,
+			ServletWebRequest request) {
+
+		/** Версия списка читается до запроса страницы */
+		if (ApplicationController.notModified(request, listVersion.current(), false)) {
+			return null;
+		}
+
+		int pageSize = Math.max(1, Math.min(size, ApplicationController.MAX_PAGE_SIZE));
+		boolean primary = ReplicaRouting.isPrimaryRequired();
+		return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(out -> {
+			Supplier<Void> page = () -> {
+				try {
+					userApi.writePage(after, pageSize, out);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				return null;
+			};
+			try {
+				if (primary) {
+					ReplicaRouting.onPrimary(page);
+				} else {
+					page.get();
+				}
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+		});
+	}
+	/** конец users() */
+
+
+	/**
+	 * Профиль пользователя (все поля, кроме пароля). Обработка GET запроса
+	 * http://url_ресурса/api/users/{логин пользователя}
+	 *
+	 * @param login логин пользователя
+	 * @return профиль пользователя (JSON, асинхронно, пул dbExecutor) с ETag (id и версия записи)
+	 *         и Last-Modified; статус 304, если пользователь не изменился
+	 * @return статус 404, если пользователь не найден
+	 */
+	@RequestMapping(value = "/{login}", method = RequestMethod.GET)
+	public CompletableFuture<ResponseEntity<Object>> user(@PathVariable("login") String login) {
+
+		return onDbExecutor(() -> {
+			User user = profiles.findByLogin(login);
+			if (user == null) {
+				return error(HttpStatus.NOT_FOUND, "Пользователь " + login + " отсутствует в системе");
+			}
+			return ResponseEntity.ok().cacheControl(CacheControl.noCache())
+					.eTag("\"" + user.getId() + "-" + user.getVersion() + "\"")
+					.lastModified(user.getUpdatedAt().getTime())
+					.<Object>body(userApi.profile(user));
+		});
+	}
+	/** конец user() */
+
+
+	/**
+	 * Массовое добавление пользователей администратором. Обработка POST запроса
+	 * http://url_ресурса/api/users/bulk (JSON массив пользователей, поля класса User)
+	 * Пользователи проверяются и сохраняются пакетами, как при импорте (UserImportService)
+	 *
+	 * @param rows пользователи
+	 * @param session сессия пользователя, используется для авторизации администратора
+	 * @return отчет о добавлении (JSON, асинхронно, пул dbExecutor)
+	 * @return статус 403, если администратор не авторизован
+	 */
+	@RequestMapping(value = "/bulk", method = RequestMethod.POST, consumes = MediaType.APPLICATION_JSON_VALUE)
+	public CompletableFuture<ResponseEntity<Object>> createUsers(@RequestBody List<User> rows, HttpSession session) {
+
+		if (!ApplicationController.isAuthenticated(session, ApplicationController.ADMIN_LOGIN)) {
+			return CompletableFuture.completedFuture(forbidden());
+		}
+		return onDbExecutor(() -> ResponseEntity.<Object>ok(userImport.importUsers(rows)));
+	}
+	/** конец createUsers() */
+
+
+	/**
+	 * Массовое удаление пользователей администратором (одним запросом). Обработка DELETE запроса
+	 * http://url_ресурса/api/users/bulk (JSON массив логинов, не более MAX_PAGE_SIZE)
+	 * Администратор не удаляется
+	 *
+	 * @param logins логины удаляемых пользователей
+	 * @param session сессия пользователя, используется для авторизации администратора
+	 * @return requested - количество логинов, deleted - количество удаленных пользователей
+	 *         (JSON, асинхронно, пул dbExecutor)
+	 * @return статус 403, если администратор не авторизован
+	 * @return статус 400, если логинов больше MAX_PAGE_SIZE
+	 */
+	@RequestMapping(value = "/bulk", method = RequestMethod.DELETE, consumes = MediaType.APPLICATION_JSON_VALUE)
+	public CompletableFuture<ResponseEntity<Object>> deleteUsers(@RequestBody List<String> logins, HttpSession session) {
+
+		if (!ApplicationController.isAuthenticated(session, ApplicationController.ADMIN_LOGIN)) {
+			return CompletableFuture.completedFuture(forbidden());
+		}
+		if (logins.size() > ApplicationController.MAX_PAGE_SIZE) {
+			return CompletableFuture.completedFuture(error(HttpStatus.BAD_REQUEST,
+					"Можно удалить не более " + ApplicationController.MAX_PAGE_SIZE + " пользователей"));
+		}
+		Set<String> selected = new LinkedHashSet<>(logins);
+		selected.remove(ApplicationController.ADMIN_LOGIN);
+		return onDbExecutor(() -> {
+			List<String> deleted = users.deleteLogins(selected);
+			for (String login : deleted) {
+				events.publishEvent(new UserChangedEvent(UserChangedEvent.Type.DELETED, login));
+			}
+			Map<String, Object> result = new LinkedHashMap<>();
+			result.put("requested", selected.size());
+			result.put("deleted", deleted.size());
+			return ResponseEntity.<Object>ok(result);
+		});
+	}
+	/** конец deleteUsers() */
+
+
+	/**
+	 * Выполнение обработки запроса с обращением к БД в пуле dbExecutor
+	 * Выбор БД для чтения (основная или реплика) передается из потока запроса
+	 *
+	 * @param task обработка запроса
+	 * @return результат обработки; статус 503, если очередь пула заполнена
+	 */
+	private CompletableFuture<ResponseEntity<Object>> onDbExecutor(Supplier<ResponseEntity<Object>> task) {
+
+		try {
+			return CompletableFuture.supplyAsync(ReplicaRouting.propagate(task), dbExecutor);
+		} catch (TaskRejectedException e) {
+			return CompletableFuture.completedFuture(overloaded(e));
+		}
+	}
+	/** конец onDbExecutor() */
+
+
+	/** Ответ с сообщением об ошибке */
+	private static ResponseEntity<Object> error(HttpStatus status, String message) {
+		return new ResponseEntity<>(Collections.singletonMap("message", message), status);
+	}
+
+
+	/** Ответ при отсутствии прав администратора */
+	private static ResponseEntity<Object> forbidden() {
+		return error(HttpStatus.FORBIDDEN, "У вас нет прав доступа");
+	}
+
+
+	/**
+	 * Обработка исключений: перегрузка пула dbExecutor (задача отклонена) или ответ
+	 * не получен за время spring.mvc.async.request-timeout
+	 *
+	 * @param e исключение
+	 * @return статус 503 с сообщением
+	 */
+	@ExceptionHandler({ TaskRejectedException.class, AsyncRequestTimeoutException.class })
+	public ResponseEntity<Object> overloaded(Exception e) {
+		return error(HttpStatus.SERVICE_UNAVAILABLE, "Сервер перегружен, повторите попытку позже");
+	}
+
+
+	/**
+	 * Обработка исключений: тело запроса не является JSON ожидаемого вида
+	 *
+	 * @param e исключение
+	 * @return статус 400 с сообщением
+	 */
+	@ExceptionHandler(HttpMessageNotReadableException.class)
+	public ResponseEntity<Object> badRequest(HttpMessageNotReadableException e) {
+		return error(HttpStatus.BAD_REQUEST, "Ошибка ввода данных");
+	}
+
+
+	/**
+	 * Обработка исключений: остальные ошибки (БД)
+	 *
+	 * @param e исключение
+	 * @return статус 500 с сообщением
+	 */
+	@ExceptionHandler(Exception.class)
+	public ResponseEntity<Object> handleException(Exception e) {
+		return error(HttpStatus.INTERNAL_SERVER_ERROR, "Ошибка базы данных");
+	}
+
+}
@@ -2,28 +2,89 @@ package berezin.school.controllers;
 /**
  * Контроллер ресурса. 
  * Реализация REST запросов
- * Обработка GET POST PUT DELETE запросов с предоставлением 
+ * Обработка GET POST PUT PATCH DELETE запросов с предоставлением 
  * соответствующего представления (шаблона)
  * Обработка исключений.
  * Валидация входных данных
+ * Обработчики, обращающиеся к БД (users, searchUsers, loginAvailability, showUser, userListAdminMode, postUser),
+ * возвращают CompletableFuture: запрос к БД выполняется в пуле dbExecutor, поток Tomcat освобождается.
+ * Страницы списка пользователей и данных пользователя выдаются с ETag и Last-Modified,
+ * на условный запрос неизмененной страницы - статус 304 без отображения шаблона.
+ * Изменения пользователей рассылаются открытым спискам администратора (server-sent events)
  */
 
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import javax.validation.ConstraintViolation;
 import javax.validation.Valid;
+import javax.validation.Validator;
+import org.springframework.beans.BeanWrapperImpl;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.BeanPropertyBindingResult;
 import org.springframework.validation.BindingResult;
 import org.springframework.validation.FieldError;
+import org.springframework.validation.ObjectError;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.async.AsyncRequestTimeoutException;
+import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import berezin.school.config.InstrumentedExecutor;
+import berezin.school.config.ReplicaRouting;
+import berezin.school.events.UserChangedEvent;
 import berezin.school.forms.LoginForm;
+import berezin.school.forms.UserPatch;
 import berezin.school.repositories.UserRepository;
+import berezin.school.repositories.UserRepositoryImpl;
+import berezin.school.services.ConnectionPoolStatistics;
+import berezin.school.services.HibernateCacheStatistics;
+import berezin.school.services.LoginAvailabilityService;
+import berezin.school.services.PasswordService;
+import berezin.school.services.UserChangeRelay;
+import berezin.school.services.UserEventBroadcaster;
+import berezin.school.services.UserExportService;
+import berezin.school.services.UserImportService;
+import berezin.school.services.UserListVersion;
+import berezin.school.services.UserProfileCache;
+import berezin.school.services.UserRowCache;
+import berezin.school.services.UserSearchService;
 import berezin.school.user.User;
+import berezin.school.user.UserSummary;
+import berezin.school.wrappers.ImportReport;
 import berezin.school.wrappers.MessageWrapper;
+import berezin.school.wrappers.UserPage;
 
 @RestController
 public class ApplicationController {
@@ -35,6 +96,98 @@ public class ApplicationController {
 	@Autowired
 	private UserRepository users;
 
+	/** Массовый импорт пользователей */
+	@Autowired
+	private UserImportService userImport;
+
+	/** Потоковый экспорт пользователей */
+	@Autowired
+	private UserExportService userExport;
+
+	/** Кэш профилей пользователей (просмотр данных пользователя) */
+	@Autowired
+	private UserProfileCache profiles;
+
+	/** Кэш отображенных строк списков пользователей (статистика) */
+	@Autowired
+	private UserRowCache userRows;
+
+	/** Поиск пользователей по логину, имени и фамилии */
+	@Autowired
+	private UserSearchService userSearch;
+
+	/** Версия списка пользователей (условные GET запросы страниц списка) */
+	@Autowired
+	private UserListVersion listVersion;
+
+	/** Рассылка изменений пользователей открытым спискам администратора */
+	@Autowired
+	private UserEventBroadcaster userEvents;
+
+	/** Доставка журнала изменений пользователей внешним системам (статистика) */
+	@Autowired
+	private UserChangeRelay userOutbox;
+
+	/** Проверка, свободен ли логин (фильтр логинов в памяти) */
+	@Autowired
+	private LoginAvailabilityService loginAvailability;
+
+	/** Статистика кэша второго уровня и кэша запросов Hibernate */
+	@Autowired
+	private HibernateCacheStatistics hibernateCache;
+
+	/** Статистика пула соединений БД */
+	@Autowired
+	private ConnectionPoolStatistics connectionPool;
+
+	/** Публикация событий изменения пользователей (согласование кэшей) */
+	@Autowired
+	private ApplicationEventPublisher events;
+
+	/** Хэширование и асинхронная проверка паролей */
+	@Autowired
+	private PasswordService passwords;
+
+	/** Пул обращений к БД асинхронных обработчиков */
+	@Autowired
+	@Qualifier("dbExecutor")
+	private InstrumentedExecutor dbExecutor;
+
+	/** Пул проверки паролей (статистика) */
+	@Autowired
+	@Qualifier("passwordExecutor")
+	private InstrumentedExecutor passwordExecutor;
+
+	/** Пул формирования событий изменений пользователей (статистика) */
+	@Autowired
+	@Qualifier("eventExecutor")
+	private InstrumentedExecutor eventExecutor;
+	
+	/** Пул отправки событий подписчикам (статистика) */
+	@Autowired
+	@Qualifier("eventSenderExecutor")
+	private InstrumentedExecutor eventSenderExecutor;
+
+	/** Валидация полей частичного обновления пользователя */
+	@Autowired
+	private Validator validator;
+
+	/** Размер страницы списка пользователей по умолчанию */
+	static final int DEFAULT_PAGE_SIZE = 50;
+
+	/** Максимальный размер страницы списка пользователей */
+	static final int MAX_PAGE_SIZE = 10000;
+
+	/**
+	 * Имя атрибута сессии с логином аутентифицированного пользователя.
+	 * Пароль проверяется в БД один раз при входе (метод login), далее права
+	 * доступа определяются по сессии без обращения к БД
+	 */
+	static final String SESSION_LOGIN = "login";
+
+	/** Логин администратора */
+	static final String ADMIN_LOGIN = "admin";
+
 	/**
 	 * Главная страница ресурса Обработка GET запроса http://url_ресурса/index 
 	 * 
@@ -55,6 +208,9 @@ public class ApplicationController {
 	/**
 	 * Аутентификация и авторизация пользователя. Обработка POST запроса
 	 * http://url_ресурса/login
+	 * Проверка пароля выполняется асинхронно в пуле проверки паролей (PasswordService),
+	 * поток обработки запросов освобождается до получения результата. Если пул перегружен,
+	 * возврат представления index со статусом 503
 	 * 
 	 * @param loginForm объект класса, имя в шаблоне "loginForm", валидация на основе
 	 *                  ограничений, описанных в классе LoginForm
@@ -64,36 +220,71 @@ public class ApplicationController {
 	 * @return представление index в случае ошибки
 	 * @return представление по адресу (администратор)
 	 * @return представление по адресу (пользователь)
+	 * @throws Exception если возникли проблемы с доступом к БД
 	 */
 	@RequestMapping(value = "/login", method = RequestMethod.POST)
-	public ModelAndView login(
+	public CompletableFuture<ModelAndView> login(
 			@Valid @ModelAttribute("loginForm") LoginForm loginForm, 
-			BindingResult bindingResult) {
+			BindingResult bindingResult) throws Exception {
 
 		/**
 		 * Если форма не прошла валидацию, возврат представления index, генерация
 		 * служебного сообщения
 		 */
 		if (bindingResult.hasErrors()) {
-			return new ModelAndView("index").addObject("mw", new MessageWrapper("Ошибка ввода данных"));
+			return CompletableFuture.completedFuture(
+					new ModelAndView("index").addObject("mw", new MessageWrapper("Ошибка ввода данных")));
 		}
 
 		/**
-		 * Если пользователь администратор, переход в меню админстратора GET запрос по
-		 * адресу http://url_ресурса/adminMode?password={пароль администратора}
+		 * Поиск в БД пользователя по логину и проверка пароля (аутентификация). Если пользователь
+		 * не найден, возврат представления index, генерация служебного сообщения
 		 */
-		if (loginForm.getLogin().equals("admin")) {
-			return new ModelAndView("redirect:/adminMode?password=" + loginForm.getPassword());
-		}
-
-		/**
-		 * Для обычных пользователей, переход в меню пользователя GET запрос по адресу
-		 * http://url_ресурса/Users/{логин пользователя}?password={пароль пользователя}
-		 */
-		return new ModelAndView("redirect:/users/" + loginForm.getLogin() + "?password=" + loginForm.getPassword());
+		String login = loginForm.getLogin();
+		return passwords.authenticate(login, loginForm.getPassword()).handle((user, error) -> {
+			
+			/** Пул проверки паролей перегружен (очередь заполнена) */
+			if (error != null) {
+				return overloaded(error);
+			}
+			
+			if (user == null) {
+				return new ModelAndView("index").addObject("mw", new MessageWrapper("Неверный логин/пароль"));
+			}
+			
+			/**
+			 * Сохранение логина в сессии пользователя (SessionLoginInterceptor).
+			 * Если пользователь администратор, переход в меню админстратора GET запрос по
+			 * адресу http://url_ресурса/adminMode
+			 */
+			if (login.equals(ADMIN_LOGIN)) {
+				return authenticated(new ModelAndView("redirect:/adminMode"), login);
+			}
+	
+			/**
+			 * Для обычных пользователей, переход в меню пользователя GET запрос по адресу
+			 * http://url_ресурса/users/{логин пользователя}
+			 */
+			return authenticated(new ModelAndView("redirect:/users/" + login), login);
+		});
 	}
 	/** конец login() */
 	
+	
+	/**
+	 * Выход из системы. Обработка POST запроса http://url_ресурса/logout
+	 * 
+	 * @param session сессия пользователя, удаляется
+	 * @return представление index
+	 */
+	@RequestMapping(value = "/logout", method = RequestMethod.POST)
+	public ModelAndView logout(HttpSession session) {
+
+		session.invalidate();
+		return new ModelAndView("redirect:/index");
+	}
+	/** конец logout() */
+	
 
 	/**
 	 * Регистрация нового пользователя. Обработка GET запроса
@@ -111,45 +302,132 @@ public class ApplicationController {
 	
 	
 	/**
-	 * Список всех существующих пользователей системы (без администратора). Обработка GET запроса 
-	 * http://url_ресурса/users
+	 * Список существующих пользователей системы (без администратора), постранично. 
+	 * Обработка GET запроса 
+	 * http://url_ресурса/users?after={id}&before={id}&size={размер страницы}
 	 * 
-	 * @return представление userList
+	 * @param after курсор следующей страницы (id последнего пользователя текущей страницы)
+	 * @param before курсор предыдущей страницы (id первого пользователя текущей страницы)
+	 * @param size размер страницы
+	 * @param request запрос, используется для проверки версии списка (If-None-Match, If-Modified-Since)
+	 * @return представление userList (асинхронно, пул dbExecutor)
+	 * @return статус 304 без обращения к БД, если список не изменился
 	 * @throws Exception если возникли проблемы с доступом к БД
 	 */
 	@RequestMapping(value = "/users", method = RequestMethod.GET)
-	public ModelAndView users() throws Exception {
+	public CompletableFuture<ModelAndView> users(
+			@RequestParam(value = "after", required = false) Integer after,
+			@RequestParam(value = "before", required = false) Integer before,
+			@RequestParam(value = "size", required = false, defaultValue = "" + DEFAULT_PAGE_SIZE) int size,
+			ServletWebRequest request)
+			throws Exception {
 
-		/** Добавление в представление userList списка userList объектов класса User */
-		return new ModelAndView("userList").addObject("userList", users.findAllLoginNotLikeAdmin());
+		/** Версия списка читается до запроса страницы */
+		if (notModified(request, listVersion.current(), false)) {
+			return CompletableFuture.completedFuture(null);
+		}
+
+		/** Добавление в представление userList страницы page пользователей */
+		return onDbExecutor(() -> new ModelAndView("userList").addObject("page", loadPage(after, before, size)));
 	}
 	/** конец users() */
+
+
+	/**
+	 * Поиск пользователей (без администратора) по логину, имени и фамилии, постранично.
+	 * Совпадение с началом логина, имени или фамилии, при отсутствии совпадений - 
+	 * похожие имена и фамилии. Обработка GET запроса 
+	 * http://url_ресурса/userSearch?q={строка поиска}&page={номер страницы}&size={размер страницы}
+	 * 
+	 * @param query строка поиска
+	 * @param page номер страницы (с 0)
+	 * @param size размер страницы
+	 * @return представление userSearch (асинхронно, пул dbExecutor)
+	 * @throws Exception если возникли проблемы с доступом к БД
+	 */
+	@RequestMapping(value = "/userSearch", method = RequestMethod.GET)
+	public CompletableFuture<ModelAndView> searchUsers(
+			@RequestParam(value = "q", required = false, defaultValue = "") String query,
+			@RequestParam(value = "page", required = false, defaultValue = "0") int page,
+			@RequestParam(value = "size", required = false, defaultValue = "" + DEFAULT_PAGE_SIZE) int size)
+			throws Exception {
+
+		/** Добавление в представление userSearch страницы page результатов поиска */
+		return onDbExecutor(
+				() -> new ModelAndView("userSearch").addObject("page", userSearch.search(query, page, size)));
+	}
+	/** конец searchUsers() */
 	
 
 	/**
-	 * Пользователь с возможность редактирования. Доступ по логину паролю. 
-	 * Обработка GET запроса 
-	 * http://url_ресурса/users/{логин пользователя}?password={пароль пользователя}
+	 * Проверка, свободен ли логин (проверка при вводе в форме регистрации). Обработка GET запроса
+	 * http://url_ресурса/loginAvailability?login={логин}
+	 * Логин, отсутствующий в фильтре логинов, свободен без обращения к БД;
+	 * логин, который может быть занят, проверяется в БД в пуле dbExecutor
+	 * 
+	 * @param login проверяемый логин
+	 * @return login, available, message - ошибка валидации логина (JSON)
+	 * @return статус 503, если очередь пула dbExecutor заполнена
+	 */
+	@RequestMapping(value = "/loginAvailability", method = RequestMethod.GET)
+	public CompletableFuture<ResponseEntity<Map<String, Object>>> loginAvailability(
+			@RequestParam("login") String login) {
+
+		/** Логин, не прошедший валидацию, не проверяется */
+		Set<ConstraintViolation<User>> violations = validator.validateValue(User.class, "login", login);
+		if (!violations.isEmpty()) {
+			return CompletableFuture.completedFuture(
+					ResponseEntity.ok(availability(login, false, violations.iterator().next().getMessage())));
+		}
+		if (!loginAvailability.mightBeTaken(login)) {
+			return CompletableFuture.completedFuture(ResponseEntity.ok(availability(login, true, null)));
+		}
+		try {
+			return CompletableFuture.supplyAsync(
+					() -> ResponseEntity.ok(availability(login, !loginAvailability.isTaken(login), null)), dbExecutor);
+		} catch (TaskRejectedException e) {
+			return CompletableFuture.completedFuture(new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE));
+		}
+	}
+	/** конец loginAvailability() */
+	
+	
+	/** Ответ проверки логина */
+	private static Map<String, Object> availability(String login, boolean available, String message) {
+		
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("login", login);
+		result.put("available", available);
+		if (message != null) {
+			result.put("message", message);
+		}
+		return result;
+	}
+	
+
+	/**
+	 * Пользователь с возможность редактирования. Доступ для пользователя, вошедшего 
+	 * в систему под этим логином. Обработка GET запроса 
+	 * http://url_ресурса/users/{логин пользователя}
 	 * 
 	 * @param login логин, используется в URL
-	 * @param password пароль, параметр в запросе
+	 * @param session сессия пользователя, используется для авторизации
 	 * @return представление userMenu
 	 * @return представление index, если возникла ошибка аутентификации
 	 * @throws Exception если возникли проблемы с доступом к БД
 	 */
 	@RequestMapping(value = "/users/{login}", method = RequestMethod.GET)
 	public ModelAndView userEditionMode(
-			@PathVariable("login") String login,
-			@RequestParam(value = "password", required = false, defaultValue = "") String password) 
+			@PathVariable("login") String login, HttpSession session) 
 			throws Exception {
 
-		/** Поиск в БД пользователя по логину и паролю (аутентификация) */
-		User user = users.findByLoginAndPassword(login, password);
+		/** Авторизация по сессии, поиск в БД данных пользователя по логину */
+		User user = isAuthenticated(session, login) ? users.findByLogin(login) : null;
 
 		/**
 		 * Если пользователь аутентифицирован, возврат представления userMenu(с
 		 * возможностью редактирования), добавление объекта класса User с
-		 * соответствующим логином и паролем
+		 * соответствующим логином
 		 */
 		if (user != null) {
 			return new ModelAndView("userMenu").addObject("user", user);
@@ -181,36 +459,50 @@ public class ApplicationController {
 	 * @throws Exception если возникли проблемы с доступом к БД
 	 */
 	@RequestMapping(value = "/users", method = RequestMethod.POST)
-	public ModelAndView postUser(
+	public CompletableFuture<ModelAndView> postUser(
 			@Valid @ModelAttribute User user, BindingResult bindingResult) throws Exception {
 
 		/** Если форма не прошла валидацию, возврат представления userAddingMenu */
 		if (bindingResult.hasErrors()) {
-			return new ModelAndView("userAddingMenu");
-		}
-
-		/**
-		 * Если логин существует в системе, возврат представления userAddingMenu с
-		 * добавлением указанной ошибки
-		 */
-		if (users.countByLogin(user.getLogin()) > 0) {
-			bindingResult.addError(new FieldError("userForm", "login", "логин уже существует в системе"));
-			return new ModelAndView("userAddingMenu");
+			return CompletableFuture.completedFuture(new ModelAndView("userAddingMenu"));
 		}
 
 		/**
-		 * Добавление пользователя в БД и GET запрос по адресу
-		 * http://url_ресурса/Users/{логин пользователя}?password={пароль пользователя}
+		 * Хэш пароля вычисляется в пуле проверки паролей, затем добавление пользователя в БД
+		 * в пуле dbExecutor (один INSERT, без предварительной проверки логина).
+		 * Если логин существует в системе, БД отклоняет вставку по ограничению уникальности,
+		 * возврат представления userAddingMenu с добавлением указанной ошибки
 		 */
-		users.save(user);
-		return new ModelAndView("redirect:/users/" + user.getLogin() + "?password=" + user.getPassword());
+		String password = user.getPassword();
+		return passwords.hashAsync(password).thenCompose(hash -> onDbExecutor(() -> {
+			user.setPassword(hash);
+			try {
+				users.save(user);
+			} catch (DataIntegrityViolationException e) {
+				if (!User.isLoginConflict(e)) {
+					throw e;
+				}
+				user.setPassword(password);
+				bindingResult.addError(new FieldError("userForm", "login", "логин уже существует в системе"));
+				return new ModelAndView("userAddingMenu");
+			}
+	
+			/**
+			 * Вход в систему под новым логином и GET запрос по адресу
+			 * http://url_ресурса/users/{логин пользователя}
+			 */
+			events.publishEvent(new UserChangedEvent(UserChangedEvent.Type.CREATED, user.getLogin()));
+			return authenticated(new ModelAndView("redirect:/users/" + user.getLogin()), user.getLogin());
+		})).exceptionally(ApplicationController::overloaded);
 	}
 	/** конец postUser() */
 	
 
 	/**
 	 * Обновление данных существующего пользователя в БД Обработка PUT запроса
-	 * http://url_ресурса/users/{логин пользователя}?oldPassword={пароль пользователя}
+	 * http://url_ресурса/users/{логин пользователя}
+	 * Права доступа определяются по сессии, изменения сохраняются одним условным UPDATE
+	 * (с проверкой версии записи, прочитанной формой). Пустой пароль - пароль не изменяется
 	 * 
 	 * @param user объект класса, имя в шаблоне "user", валидация на основе
 	 *             ограничений, описанных в классе User
@@ -218,44 +510,62 @@ public class ApplicationController {
 	 *                      экземпляра класса, содержащего информацию об ошибках в
 	 *                      соответствующих полях
 	 * @param login используется в URL для поиска пользователя
-	 * @param oldPassword параметр в запросе, используется для аутентификации пользователя
-	 *                    при изменении данных
+	 * @param session сессия пользователя, используется для авторизации при изменении данных
 	 * @return представление userMenu, если данные не прошли валидацию
 	 * @return представление по адресу в случае успешной транзакции
+	 * @return представление userMenu с текущими данными, если запись изменена в другом сеансе
+	 * @return представление userMenu с текущими данными и статусом 400, если версия записи не передана
 	 * @return представление index, если возникла ошибка аутентификации
 	 * @throws Exception если возникли проблемы с доступом к БД
 	 */
 	@RequestMapping(value = "/users/{login}", method = RequestMethod.PUT)
-	public ModelAndView updateUser(
+	public CompletableFuture<ModelAndView> updateUser(
 			@Valid @ModelAttribute User user, BindingResult bindingResult,
-			@PathVariable("login") String login,
-			@RequestParam(value = "oldPassword", required = false, defaultValue = "") String oldPassword)
+			@PathVariable("login") String login, HttpSession session)
 			throws Exception {
 
+		/** Пустой пароль - пароль не изменяется, ошибки валидации пароля не учитываются */
+		boolean keepPassword = user.getPassword() == null || user.getPassword().isEmpty();
+		BindingResult errors = keepPassword ? withoutPasswordErrors(bindingResult) : bindingResult;
+
 		/** Если форма не прошла валидацию */
-		if (bindingResult.hasErrors()) {
+		if (isAuthenticated(session, login) && errors.hasErrors()) {
 
 			/**
-			 * Если был введен новый пароль, отменяем его изменение просим пользователя
+			 * Если новый пароль не прошел валидацию, отменяем его изменение просим пользователя
 			 * повторить новый пароль еще раз
 			 */
-			if (!oldPassword.equals(user.getPassword())) {
-				user.setPassword(oldPassword);
-				bindingResult.addError(new FieldError("updateUserForm", "password", "Введите новый пароль еще раз"));
+			if (errors.hasFieldErrors("password")) {
+				user.setPassword(null);
+				errors.addError(new FieldError("updateUserForm", "password", "Введите новый пароль еще раз"));
 			}
 
 			/** Возвращаем представление userMenu для устранения ошибок */
-			return new ModelAndView("userMenu").addObject("user", user);
+			return CompletableFuture.completedFuture(new ModelAndView("userMenu").addObject("user", user)
+					.addObject(BindingResult.MODEL_KEY_PREFIX + "user", errors));
 		}
 
 		/**
-		 * Если пользователь аутентифицирован, обновление данных в БД, GET запрос по
-		 * адресу http://url_ресурса/Users/{логин пользователя}?password={пароль
-		 * пользователя}
+		 * Если пользователь аутентифицирован, обновление данных в БД (хэш нового пароля - в пуле
+		 * проверки паролей, UPDATE - в пуле dbExecutor), GET запрос по
+		 * адресу http://url_ресурса/users/{логин пользователя}
 		 */
-		if (users.findByLoginAndPassword(login, oldPassword) != null) {
-			users.save(user);
-			return new ModelAndView("redirect:/users/" + user.getLogin() + "?password=" + user.getPassword());
+		if (isAuthenticated(session, login)) {
+			if (user.getVersion() == null) {
+				return onDbExecutor(() -> versionMissing("userMenu", "user", login));
+			}
+			Map<String, Object> fields = fieldsOf(user);
+			fields.remove("password");
+			return withPasswordHash(keepPassword ? null : user.getPassword(), hash -> {
+				if (hash != null) {
+					fields.put("password", hash);
+				}
+				if (users.updateFields(login, user.getVersion(), fields) == 0) {
+					return updateRejected("userMenu", "user", login);
+				}
+				events.publishEvent(new UserChangedEvent(UserChangedEvent.Type.UPDATED, login));
+				return new ModelAndView("redirect:/users/" + login);
+			});
 		}
 
 		/**
@@ -263,26 +573,119 @@ public class ApplicationController {
 		 * служебного сообщения
 		 */
 		String message = "У вас нет прав доступа для изменения данных пользователя";
-		return new ModelAndView("index").addObject("mw", new MessageWrapper(message)).addObject("loginForm",
-				new LoginForm());
+		return CompletableFuture.completedFuture(new ModelAndView("index")
+				.addObject("mw", new MessageWrapper(message)).addObject("loginForm", new LoginForm()));
 	}
 	/** конец updateUser() */
 	
 
+	/**
+	 * Частичное обновление данных пользователя. Обработка PATCH запроса
+	 * http://url_ресурса/users/{логин пользователя}
+	 * Передаются только измененные поля (password, name, surName, adress, birthDate, info),
+	 * изменения сохраняются одним запросом UPDATE этих столбцов, без предварительного чтения записи.
+	 * Пустой пароль - пароль не изменяется.
+	 * Если запись изменена в другом сеансе после чтения формы (версия не совпадает), изменения
+	 * отклоняются
+	 * 
+	 * @param params измененные поля формы, валидация на основе ограничений, описанных в классе User
+	 * @param version версия записи, прочитанная формой (без версии - статус 400, изменение отклоняется)
+	 * @param login используется в URL для поиска пользователя
+	 * @param session сессия пользователя, используется для авторизации при изменении данных
+	 * @return представление userMenu, если данные не прошли валидацию
+	 * @return представление по адресу в случае успешной транзакции
+	 * @return представление userMenu с текущими данными, если запись изменена в другом сеансе
+	 * @return представление userMenu с текущими данными и статусом 400, если версия записи не передана
+	 * @return представление index, если возникла ошибка аутентификации или пользователь отсутствует
+	 * @throws Exception если возникли проблемы с доступом к БД
+	 */
+	@RequestMapping(value = "/users/{login}", method = RequestMethod.PATCH)
+	public CompletableFuture<ModelAndView> patchUser(
+			@RequestParam Map<String, String> params,
+			@RequestParam(value = "version", required = false) Integer version,
+			@PathVariable("login") String login, HttpSession session)
+			throws Exception {
+
+		/** Если пользователь не аутентифицирован, генерация служебного сообщения */
+		if (!isAuthenticated(session, login)) {
+			String message = "У вас нет прав доступа для изменения данных пользователя";
+			return CompletableFuture.completedFuture(new ModelAndView("index")
+					.addObject("mw", new MessageWrapper(message)).addObject("loginForm", new LoginForm()));
+		}
+
+		if (version == null) {
+			return onDbExecutor(() -> versionMissing("userMenu", "user", login));
+		}
+		UserPatch patch = UserPatch.of(params, validator);
+
+		/**
+		 * Если поля не прошли валидацию, возврат представления userMenu с текущими данными
+		 * пользователя, измененными полями и ошибками. Новый пароль не сохраняется в форме, 
+		 * пользователя просим повторить его еще раз
+		 */
+		if (patch.hasErrors()) {
+			return onDbExecutor(() -> patchRejected(login, patch));
+		}
+
+		/**
+		 * Сохранение измененных полей (хэш нового пароля - в пуле проверки паролей, UPDATE - 
+		 * в пуле dbExecutor), GET запрос по адресу http://url_ресурса/users/{логин пользователя}
+		 */
+		if (patch.isEmpty()) {
+			return CompletableFuture.completedFuture(new ModelAndView("redirect:/users/" + login));
+		}
+		Map<String, Object> fields = new LinkedHashMap<>(patch.getFields());
+		String password = (String) fields.remove("password");
+		return withPasswordHash(password, hash -> {
+			if (hash != null) {
+				fields.put("password", hash);
+			}
+			if (users.updateFields(login, version, fields) == 0) {
+				return updateRejected("userMenu", "user", login);
+			}
+			events.publishEvent(new UserChangedEvent(UserChangedEvent.Type.UPDATED, login));
+			return new ModelAndView("redirect:/users/" + login);
+		});
+	}
+	/** конец patchUser() */
+	
+	
+	/**
+	 * Поля PATCH запроса не прошли валидацию: представление userMenu с текущими данными
+	 * пользователя, измененными полями и ошибками. Новый пароль не сохраняется в форме, 
+	 * пользователя просим повторить его еще раз
+	 */
+	private ModelAndView patchRejected(String login, UserPatch patch) {
+		
+		User user = users.findByLogin(login);
+		Map<String, Object> valid = new LinkedHashMap<>(patch.getFields());
+		valid.remove("password");
+		new BeanWrapperImpl(user).setPropertyValues(valid);
+		BindingResult bindingResult = new BeanPropertyBindingResult(user, "user");
+		patch.getErrors().forEach((field, message) -> bindingResult.addError(new FieldError("user", field,
+				patch.getRejected().get(field), false, null, null, message)));
+		if (patch.getErrors().containsKey("password")) {
+			bindingResult.addError(new FieldError("user", "password", "Введите новый пароль еще раз"));
+		}
+		return new ModelAndView("userMenu").addObject("user", user)
+				.addObject(BindingResult.MODEL_KEY_PREFIX + "user", bindingResult);
+	}
+	/** конец patchRejected() */
+	
+
 	/**
 	 * Удаление пользователя из БД. Обработка DELETE запроса
-	 * http://url_ресурса/users/{логин пользователя}?password={пароль пользователя}
+	 * http://url_ресурса/users/{логин пользователя}
 	 * 
 	 * @param login используется в URL для поиска пользователя
-	 * @param password параметр в запросе, используется для аутентификации пользователя
-	 *                 при удалении данных
+	 * @param session сессия пользователя, используется для авторизации при удалении данных,
+	 *                после удаления пользователя сессия завершается
 	 * @return представление index, с указанием сообщения
 	 * @throws Exception если возникли проблемы с доступом к БД
 	 */
 	@RequestMapping(value = "/users/{login}", method = RequestMethod.DELETE)
 	public ModelAndView deleteUser(
-			@PathVariable("login") String login,
-			@RequestParam(value = "password", required = false, defaultValue = "") String password) throws Exception {
+			@PathVariable("login") String login, HttpSession session) throws Exception {
 
 		/** сообщение о статусе операции */
 		String message;
@@ -291,8 +694,11 @@ public class ApplicationController {
 		 * Если пользователь аутентифицирован, удаление пользователя, генерация
 		 * служебного сообщения
 		 */
-		if (users.findByLoginAndPassword(login, password) != null) {
-			users.deleteByLogin(login);
+		if (isAuthenticated(session, login)) {
+			if (users.deleteByLogin(login) > 0) {
+				events.publishEvent(new UserChangedEvent(UserChangedEvent.Type.DELETED, login));
+			}
+			session.invalidate();
 			message = "Пользователь " + login + " удален";
 		}
 
@@ -313,21 +719,46 @@ public class ApplicationController {
 	 * http://url_ресурса/users/{логин пользователя}/showUser
 	 * 
 	 * @param login используется в URL для поиска пользователя
-	 * @return представление userDetails
+	 * @param request запрос, используется для проверки версии пользователя (If-None-Match, If-Modified-Since)
+	 * @return представление userDetails (асинхронно, пул dbExecutor)
+	 * @return статус 304 без обращения к шаблону, если пользователь не изменился
 	 * @return представление index, если пользователь не найден
 	 * @throws Exception если возникли проблемы с доступом к БД
 	 */
 	@RequestMapping(value = "/users/{login}/showUser", method = RequestMethod.GET)
-	public ModelAndView showUser(@PathVariable("login") String login) throws Exception {
+	public CompletableFuture<ModelAndView> showUser(@PathVariable("login") String login,
+			ServletWebRequest request) throws Exception {
 
-		/** Поиск пользователя по логину */
-		User user = users.findByLogin(login);
+		return onDbExecutor(() -> showUserView(login, request));
+	}
+	/** конец showUser() */
+	
+
+	/**
+	 * Представление данных пользователя (выполняется в пуле dbExecutor)
+	 * 
+	 * @param login логин пользователя
+	 * @param request запрос (проверка версии пользователя)
+	 * @return представление userDetails
+	 * @return null (статус 304), если пользователь не изменился
+	 * @return представление index, если пользователь не найден
+	 */
+	private ModelAndView showUserView(String login, ServletWebRequest request) {
+
+		/** Поиск пользователя по логину (через кэш профилей) */
+		User user = profiles.findByLogin(login);
 
 		/**
-		 * Если пользователь найден, возврат представления userDetails с добавлением
+		 * Если пользователь найден, проверка версии (ETag - id и версия записи, Last-Modified -
+		 * время изменения), возврат представления userDetails с добавлением
 		 * объекта класса User с соответствующим логином
 		 */
 		if (user != null) {
+			if (request.checkNotModified("\"" + user.getId() + "-" + user.getVersion() + "\"",
+					user.getUpdatedAt().getTime())) {
+				return null;
+			}
+			request.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
 			return new ModelAndView("userDetails").addObject("user", user);
 		}
 
@@ -338,25 +769,23 @@ public class ApplicationController {
 		return new ModelAndView("index").addObject("mw", new MessageWrapper("Пользователь не найден"))
 				.addObject("loginForm", new LoginForm());
 	}
-	/** конец showUser() */
+	/** конец showUserView() */
 	
 
 	/**
 	 * Меню администратора Обработка GET запроса
-	 * http://url_ресурса/adminMode?password={пароль администратора}
+	 * http://url_ресурса/adminMode
 	 * 
-	 * @param password пароль администратора, параметр в запросе
+	 * @param session сессия пользователя, используется для авторизации администратора
 	 * @return представление adminMenu
 	 * @return представление index, если пользователь не найден
 	 * @throws Exception если возникли проблемы с доступом к БД
 	 */
 	@RequestMapping(value = "/adminMode", method = RequestMethod.GET)
-	public ModelAndView adminMode(
-			@RequestParam(value = "password", required = false, defaultValue = "") String password) 
-			throws Exception {
+	public ModelAndView adminMode(HttpSession session) throws Exception {
 		
-		/** Аутентификация администратора, возврат представления adminMenu*/
-		User admin = users.findByLoginAndPassword("admin", password);
+		/** Авторизация администратора по сессии, возврат представления adminMenu*/
+		User admin = isAuthenticated(session, ADMIN_LOGIN) ? users.findByLogin(ADMIN_LOGIN) : null;
 		if (admin != null) {
 			return new ModelAndView("adminMenu").addObject("admin", admin);
 		}
@@ -373,41 +802,49 @@ public class ApplicationController {
 
 	/**
 	 * Изменение пароля администратора Обработка PUT запроса
-	 * http://url_ресурса/adminMode?oldPassword={пароль администратора}
+	 * http://url_ресурса/adminMode/admin
 	 * 
 	 * * @param user объект класса, имя в шаблоне "admin", валидация на основе
 	 *               ограничений, описанных в классе User
 	 * @param bindingResult если входной пароль не прошел валидацию, то генерация
 	 *                      экземпляра класса, содержащего информацию об ошибках в
 	 *                      соответствующих полях
-	 * @param oldPassword параметр в запросе, используется для аутентификации администратора
-	 *                    при изменении данных
+	 * @param session сессия пользователя, используется для авторизации администратора
+	 *                при изменении данных
 	 * @return представление adminMenu, если данные не прошли валидацию
 	 * @return представление по адресу в случае успешной транзакции
+	 * @return представление adminMenu с текущими данными и статусом 400, если версия записи не передана
 	 * @return представление index, если ошибка аутентификации
 	 * @throws Exception если возникли проблемы с доступом к БД
 	 */
 	@RequestMapping(value = "/adminMode/admin", method = RequestMethod.PUT)
-	public ModelAndView updateAdmin(
-			@Valid @ModelAttribute User admin, BindingResult bindingResult,
-			@RequestParam(value = "oldPassword", required = false, defaultValue = "") String oldPassword)
+	public CompletableFuture<ModelAndView> updateAdmin(
+			@Valid @ModelAttribute User admin, BindingResult bindingResult, HttpSession session)
 			throws Exception {
 		
 		/** 
 		 * Если пароль не прошел валидацию, создание новой ошибки, сохранение старого пароля, 
 		 * возвращение представления adminMenu
 		 *  */
-		if (bindingResult.hasErrors()) {
+		if (isAuthenticated(session, ADMIN_LOGIN) && bindingResult.hasErrors()) {
 			bindingResult.addError(new FieldError("updateUserForm", "password", "Введите новый пароль еще раз"));
-			admin.setPassword(oldPassword);
-			return new ModelAndView("adminMenu").addObject("password", admin);
+			admin.setPassword(null);
+			return CompletableFuture.completedFuture(new ModelAndView("adminMenu").addObject("admin", admin));
 		}
 		
-		/**При успешной аутентификации администратора обновление данных в БД, GET запрос по
-		 * адресу http://url_ресурса/adminMode/?password={пароль администратора} */
-		if (users.findByLoginAndPassword(admin.getLogin(), oldPassword) != null) {
-			users.save(admin);
-			return new ModelAndView("redirect:/adminMode/?password=" + admin.getPassword());
+		/**При успешной авторизации администратора обновление данных в БД (хэш пароля - в пуле
+		 * проверки паролей, UPDATE - в пуле dbExecutor), GET запрос по адресу http://url_ресурса/adminMode */
+		if (isAuthenticated(session, ADMIN_LOGIN) && ADMIN_LOGIN.equals(admin.getLogin())) {
+			if (admin.getVersion() == null) {
+				return onDbExecutor(() -> versionMissing("adminMenu", "admin", ADMIN_LOGIN));
+			}
+			return withPasswordHash(admin.getPassword(), hash -> {
+				if (users.updateFields(ADMIN_LOGIN, admin.getVersion(), Collections.singletonMap("password", hash)) == 0) {
+					return updateRejected("adminMenu", "admin", ADMIN_LOGIN);
+				}
+				events.publishEvent(new UserChangedEvent(UserChangedEvent.Type.UPDATED, ADMIN_LOGIN));
+				return new ModelAndView("redirect:/adminMode");
+			});
 		}
 		
 		/**
@@ -415,75 +852,106 @@ public class ApplicationController {
 		 * служебного сообщения
 		 */
 		String message = "У вас нет прав доступа для изменения данных администратора";
-		return new ModelAndView("index").addObject("mw", new MessageWrapper(message)).addObject("loginForm",
-				new LoginForm());
+		return CompletableFuture.completedFuture(new ModelAndView("index")
+				.addObject("mw", new MessageWrapper(message)).addObject("loginForm", new LoginForm()));
 	}
 	/** конец updateAdmin() */
 
 	
 	/**
 	 * Список всех существующих пользователей системы (без администратора). Режим редактирования
-	 * Обработка GET запроса http://url_ресурса/adminMode/users?password={пароль администратора}
+	 * Обработка GET запроса http://url_ресурса/adminMode/users
 	 * 
-	 * @param password пароль администратора, параметр в запросе
-	 * @return представление userList 
+	 * @param session сессия пользователя, используется для авторизации администратора
+	 * @param after курсор следующей страницы (id последнего пользователя текущей страницы)
+	 * @param before курсор предыдущей страницы (id первого пользователя текущей страницы)
+	 * @param size размер страницы
+	 * @param request запрос, используется для проверки версии списка (If-None-Match, If-Modified-Since)
+	 * @return представление userList (асинхронно, пул dbExecutor)
+	 * @return статус 304 без обращения к БД, если список не изменился
 	 * @throws Exception если возникли проблемы с доступом к БД
 	 */
 	@RequestMapping(value = "/adminMode/users", method = RequestMethod.GET)
-	public ModelAndView userListAdminMode(
-			@RequestParam(value = "password", required = false, defaultValue = "") String password) 
+	public CompletableFuture<ModelAndView> userListAdminMode(HttpSession session,
+			@RequestParam(value = "after", required = false) Integer after,
+			@RequestParam(value = "before", required = false) Integer before,
+			@RequestParam(value = "size", required = false, defaultValue = "" + DEFAULT_PAGE_SIZE) int size,
+			ServletWebRequest request)
 			throws Exception {
 		
 		/**
-		 * Если аутентификация администратора пройдена, добавление в представление 
-		 * adminUserList списка userList объектов класса User и отправкой пароля 
-		 * классом служебного сообщениея для формирования в шаблоне DELETE запроса
+		 * Если авторизация администратора пройдена, добавление в представление 
+		 * adminUserList страницы page пользователей (статус 304, если список не изменился)
 		 * */
-		if (users.findByLoginAndPassword("admin", password) != null) {
-			return new ModelAndView("adminUserList").addObject("userList", users.findAllLoginNotLikeAdmin())
-					                                .addObject("mw", new MessageWrapper(password));
+		if (isAuthenticated(session, ADMIN_LOGIN)) {
+			if (notModified(request, listVersion.current(), true)) {
+				return CompletableFuture.completedFuture(null);
+			}
+			return onDbExecutor(
+					() -> new ModelAndView("adminUserList").addObject("page", loadPage(after, before, size)));
 		}
 		
 		/**
 		 * Если администратор не аутентифицирован, возврат представления index, генерация
 		 * служебного сообщения
 		 */
-		return new ModelAndView("index").addObject("mw", new MessageWrapper("Неверный логин/пароль"))
-				.addObject("loginForm", new LoginForm());
+		return CompletableFuture.completedFuture(new ModelAndView("index")
+				.addObject("mw", new MessageWrapper("Неверный логин/пароль")).addObject("loginForm", new LoginForm()));
 	}
 	/** конец userListAdminMode() */
 
+
+	/**
+	 * Изменения пользователей для открытого списка администратора (server-sent events).
+	 * Обработка GET запроса http://url_ресурса/adminMode/users/events
+	 * События: created, updated - login, id, html (ячейки строки списка), deleted - login,
+	 * reload - список устарел (клиент не успевал получать события), соединение закрывается.
+	 * Соединение закрывается при завершении сессии (выход, истечение времени сессии)
+	 * 
+	 * @param session сессия пользователя, используется для авторизации администратора
+	 * @return поток событий (text/event-stream)
+	 * @return статус 403, если администратор не авторизован
+	 */
+	@RequestMapping(value = "/adminMode/users/events", method = RequestMethod.GET)
+	public ResponseEntity<SseEmitter> userEventsAdminMode(HttpSession session) {
+		
+		if (!isAuthenticated(session, ADMIN_LOGIN)) {
+			return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+		}
+		return ResponseEntity.ok(userEvents.subscribe(session.getId()));
+	}
+	/** конец userEventsAdminMode() */
+
 	
 	/**
 	 * Удаление пользователя из БД Администратором Обработка DELETE запроса
-	 * http://url_ресурса/users/{логин пользователя}?password={пароль администратора}
+	 * http://url_ресурса/adminMode/users/{логин пользователя}
 	 * 
 	 * @param login используется в URL для поиска пользователя
-	 * @param password параметр в запросе, используется для авторизации администратора
-	 *                 при удалении данных
+	 * @param session сессия пользователя, используется для авторизации администратора
+	 *                при удалении данных
 	 * @return представление по адресу в случае успешной транзакции
 	 * @return представление index, с указанием сообщения
 	 * @throws Exception если возникли проблемы с доступом к БД
 	 */
 	@RequestMapping(value = "/adminMode/users/{login}", method = RequestMethod.DELETE)
 	public ModelAndView deleteUserAdminMode(
-			@PathVariable("login") String login,
-			@RequestParam(value = "password", required = false, defaultValue = "") String password) 
+			@PathVariable("login") String login, HttpSession session) 
 			throws Exception {
 		
 		/** сообщение о статусе операции */
 		String message;
 		
-		/**  Если аутентификация администратора пройдена */
-		if (users.findByLoginAndPassword("admin", password) != null) {
+		/**  Если авторизация администратора пройдена */
+		if (isAuthenticated(session, ADMIN_LOGIN)) {
 			
 			/**  
-			 * Если пользователь существует в БД, удаление пользователя, GET запрос по адресу 
-			 * http://url_ресурса/adminMode/users?password={пароль администратора}
+			 * Удаление пользователя одним запросом. Если пользователь существовал в БД, 
+			 * GET запрос по адресу http://url_ресурса/adminMode/users
 			 */
-			if (users.countByLogin(login) > 0) {
-				users.deleteByLogin(login);
-				return new ModelAndView("redirect:/adminMode/users?password=" + password);
+			if (!ADMIN_LOGIN.equals(login) && users.deleteByLogin(login) > 0) {
+				events.publishEvent(new UserChangedEvent(UserChangedEvent.Type.DELETED, login));
+				return new ModelAndView("redirect:/adminMode/users");
 			} 
 			
 			/** Генерация служебного сообщения при отсутсвии пользователя */
@@ -503,8 +971,503 @@ public class ApplicationController {
 				                        .addObject("loginForm", new LoginForm());
 	}
 	/** конец deleteUserAdminMode() */
+
+	
+	/**
+	 * Удаление нескольких пользователей Администратором (одним запросом). Обработка DELETE запроса
+	 * http://url_ресурса/adminMode/users?logins={логин}&logins={логин}...
+	 * 
+	 * @param logins логины удаляемых пользователей (отмеченные в списке), администратор не удаляется
+	 * @param session сессия пользователя, используется для авторизации администратора
+	 *                при удалении данных
+	 * @return представление по адресу в случае успешной транзакции
+	 * @return представление index, с указанием сообщения
+	 * @throws Exception если возникли проблемы с доступом к БД
+	 */
+	@RequestMapping(value = "/adminMode/users", method = RequestMethod.DELETE)
+	public ModelAndView deleteUsersAdminMode(
+			@RequestParam(value = "logins", required = false) List<String> logins, HttpSession session) 
+			throws Exception {
+		
+		/** Если администратор не аутентифицирован, генерация служебного сообщения */
+		if (!isAuthenticated(session, ADMIN_LOGIN)) {
+			return new ModelAndView("index")
+					.addObject("mw", new MessageWrapper("У вас нет прав доступа для удаления пользователя"))
+					.addObject("loginForm", new LoginForm());
+		}
+		
+		/** 
+		 * Удаление отмеченных пользователей, GET запрос по адресу http://url_ресурса/adminMode/users
+		 * Размер списка ограничен размером страницы (MAX_PAGE_SIZE)
+		 */
+		if (logins != null && logins.size() > MAX_PAGE_SIZE) {
+			return new ModelAndView("index")
+					.addObject("mw", new MessageWrapper("Можно удалить не более " + MAX_PAGE_SIZE + " пользователей"))
+					.addObject("loginForm", new LoginForm());
+		}
+		if (logins != null && !logins.isEmpty()) {
+			Set<String> selected = new LinkedHashSet<>(logins);
+			selected.remove(ADMIN_LOGIN);
+			for (String login : users.deleteLogins(selected)) {
+				events.publishEvent(new UserChangedEvent(UserChangedEvent.Type.DELETED, login));
+			}
+		}
+		return new ModelAndView("redirect:/adminMode/users");
+	}
+	/** конец deleteUsersAdminMode() */
+	
+	
+	/**
+	 * Изменяемые поля пользователя из формы (полное обновление)
+	 * 
+	 * @param user данные формы
+	 * @return поля UserRepositoryImpl.UPDATABLE_FIELDS и их значения
+	 */
+	private static Map<String, Object> fieldsOf(User user) {
+		
+		BeanWrapperImpl bean = new BeanWrapperImpl(user);
+		Map<String, Object> fields = new LinkedHashMap<>();
+		for (String field : UserRepositoryImpl.UPDATABLE_FIELDS) {
+			fields.put(field, bean.getPropertyValue(field));
+		}
+		return fields;
+	}
+	/** конец fieldsOf() */
+	
+	
+	/**
+	 * Ошибки валидации формы без ошибок поля password (пароль не изменяется)
+	 * 
+	 * @param bindingResult результат валидации формы
+	 * @return результат валидации без ошибок поля password
+	 */
+	private static BindingResult withoutPasswordErrors(BindingResult bindingResult) {
+		
+		BindingResult errors = new BeanPropertyBindingResult(bindingResult.getTarget(), bindingResult.getObjectName());
+		for (ObjectError error : bindingResult.getAllErrors()) {
+			if (!(error instanceof FieldError) || !"password".equals(((FieldError) error).getField())) {
+				errors.addError(error);
+			}
+		}
+		return errors;
+	}
+	/** конец withoutPasswordErrors() */
+	
+	
+	/**
+	 * Изменение пользователя не выполнено (условный UPDATE не изменил запись)
+	 * Если пользователь существует, значит версия записи устарела - запись изменена 
+	 * в другом сеансе после чтения формы: возврат формы с текущими данными и сообщением.
+	 * Иначе пользователь удален - возврат представления index с сообщением
+	 * 
+	 * @param view представление формы (userMenu, adminMenu)
+	 * @param objectName имя объекта формы в представлении
+	 * @param login логин изменяемого пользователя
+	 * @return представление формы или index
+	 */
+	private ModelAndView updateRejected(String view, String objectName, String login) {
+		
+		return currentForm(view, objectName, login, "concurrentModification",
+				"Данные изменены в другом сеансе. Проверьте текущие данные и повторите изменения");
+	}
+	/** конец updateRejected() */
+	
+	
+	/**
+	 * Изменение пользователя без версии записи, прочитанной формой, отклоняется: без проверки
+	 * версии изменения другого сеанса были бы перезаписаны. Возврат формы с текущими данными
+	 * (версией) и сообщением, статус 400
+	 * 
+	 * @param view представление формы (userMenu, adminMenu)
+	 * @param objectName имя объекта формы в представлении
+	 * @param login логин изменяемого пользователя
+	 * @return представление формы или index со статусом 400
+	 */
+	private ModelAndView versionMissing(String view, String objectName, String login) {
+		
+		ModelAndView form = currentForm(view, objectName, login, "versionMissing",
+				"Не указана версия данных. Проверьте текущие данные и повторите изменения");
+		form.setStatus(HttpStatus.BAD_REQUEST);
+		return form;
+	}
+	/** конец versionMissing() */
+	
+	
+	/**
+	 * Форма с текущими данными пользователя и общей ошибкой формы
+	 * Если пользователь удален - представление index с сообщением
+	 */
+	private ModelAndView currentForm(String view, String objectName, String login, String code, String message) {
+		
+		User current = users.findByLogin(login);
+		if (current == null) {
+			return new ModelAndView("index")
+					.addObject("mw", new MessageWrapper("Пользователь " + login + " отсутствует в системе"))
+					.addObject("loginForm", new LoginForm());
+		}
+		BindingResult bindingResult = new BeanPropertyBindingResult(current, objectName);
+		bindingResult.reject(code, message);
+		return new ModelAndView(view).addObject(objectName, current)
+				.addObject(BindingResult.MODEL_KEY_PREFIX + objectName, bindingResult);
+	}
+	/** конец currentForm() */
+	
+	
+	/**
+	 * Вход в систему. Логин передается в модели представления: сессия создается
+	 * (идентификатор меняется, чтобы исключить фиксацию сессии) и логин сохраняется в ней
+	 * SessionLoginInterceptor в потоке обработки запроса, а не в потоке пула
+	 * 
+	 * @param view представление после входа
+	 * @param login логин аутентифицированного пользователя
+	 * @return представление с логином для сохранения в сессии
+	 */
+	private static ModelAndView authenticated(ModelAndView view, String login) {
+		
+		return view.addObject(SessionLoginInterceptor.AUTHENTICATED_LOGIN, login);
+	}
+	/** конец authenticated() */
+	
+	
+	/**
+	 * Авторизация по сессии, без обращения к БД
+	 * 
+	 * @param session сессия пользователя
+	 * @param login логин, для которого запрашивается доступ
+	 * @return true, если в сессии вошел пользователь с указанным логином
+	 */
+	static boolean isAuthenticated(HttpSession session, String login) {
+		
+		return login != null && login.equals(session.getAttribute(SESSION_LOGIN));
+	}
+	/** конец isAuthenticated() */
+	
+	
+	/**
+	 * Проверка условного GET запроса страницы списка (If-None-Match, If-Modified-Since)
+	 * по версии списка, до обращения к БД и шаблону. Ответ сохраняется клиентом
+	 * с проверкой версии при каждом запросе (Cache-Control: no-cache)
+	 * 
+	 * @param request запрос
+	 * @param version версия списка, null - заголовки версии не выдаются
+	 * @param personal страница администратора (не сохраняется общими кэшами)
+	 * @return true, если список не изменился (статус 304 установлен)
+	 */
+	static boolean notModified(ServletWebRequest request, UserListVersion.Version version, boolean personal) {
+		
+		if (version == null) {
+			return false;
+		}
+		request.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, personal ? "private, no-cache" : "no-cache");
+		return request.checkNotModified(version.getETag(), version.getLastModified());
+	}
+	/** конец notModified() */
+	
+	
+	/**
+	 * Выполнение обработки запроса с обращением к БД в пуле dbExecutor
+	 * Выбор БД для чтения (основная или реплика) передается из потока запроса
+	 * 
+	 * @param task обработка запроса
+	 * @return результат обработки; представление index со статусом 503, если очередь пула заполнена
+	 */
+	private CompletableFuture<ModelAndView> onDbExecutor(Supplier<ModelAndView> task) {
+		
+		try {
+			return CompletableFuture.supplyAsync(ReplicaRouting.propagate(task), dbExecutor);
+		} catch (TaskRejectedException e) {
+			return CompletableFuture.completedFuture(overloaded(e));
+		}
+	}
+	/** конец onDbExecutor() */
+	
+	
+	/**
+	 * Изменение пользователя с новым паролем: хэш пароля вычисляется в пуле проверки паролей,
+	 * затем изменение выполняется в пуле dbExecutor (как добавление пользователя postUser)
+	 * Выбор БД для чтения (основная или реплика) передается из потока запроса
+	 * 
+	 * @param password новый пароль; null - пароль не изменяется (задаче передается null)
+	 * @param task изменение пользователя, параметр - хэш пароля
+	 * @return результат изменения; представление index со статусом 503, если очередь пула заполнена
+	 */
+	private CompletableFuture<ModelAndView> withPasswordHash(String password, Function<String, ModelAndView> task) {
+		
+		boolean primary = ReplicaRouting.isPrimaryRequired();
+		CompletableFuture<String> hash = password == null
+				? CompletableFuture.completedFuture(null) : passwords.hashAsync(password);
+		return hash.thenCompose(value -> onDbExecutor(
+				() -> primary ? ReplicaRouting.onPrimary(() -> task.apply(value)) : task.apply(value)))
+				.exceptionally(ApplicationController::overloaded);
+	}
+	/** конец withPasswordHash() */
+	
+	
+	/**
+	 * Ответ при перегрузке пулов dbExecutor и проверки паролей (задача отклонена)
+	 * Остальные ошибки передаются обработчику исключений
+	 * 
+	 * @param error ошибка асинхронной обработки запроса
+	 * @return представление index со статусом 503
+	 */
+	private static ModelAndView overloaded(Throwable error) {
+		
+		Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+		if (!(cause instanceof TaskRejectedException)) {
+			throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+		}
+		return busy();
+	}
+	/** конец overloaded() */
+	
+	
+	/** Представление index со статусом 503 и сообщением о перегрузке сервера */
+	private static ModelAndView busy() {
+		
+		ModelAndView busy = new ModelAndView("index")
+				.addObject("mw", new MessageWrapper("Сервер перегружен, повторите попытку позже"))
+				.addObject("loginForm", new LoginForm());
+		busy.setStatus(HttpStatus.SERVICE_UNAVAILABLE);
+		return busy;
+	}
+	/** конец busy() */
+	
+
+	/**
+	 * Загрузка страницы списка пользователей (keyset-пагинация по id)
+	 * Запрашивается на одну запись больше размера страницы, чтобы определить
+	 * наличие следующей (предыдущей) страницы без дополнительного COUNT запроса.
+	 * Пустая страница по курсору (пользователи удалены после получения курсора) заменяется
+	 * первой страницей (переход назад) или последней страницей (переход вперед),
+	 * чтобы у страницы остались ссылки перехода
+	 * 
+	 * @param after курсор следующей страницы, null - первая страница
+	 * @param before курсор предыдущей страницы, используется если after не указан
+	 * @param size размер страницы, приводится к диапазону 1..MAX_PAGE_SIZE
+	 * @return страница пользователей, упорядоченная по возрастанию id
+	 */
+	private UserPage loadPage(Integer after, Integer before, int size) {
+		
+		int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+		PageRequest limit = new PageRequest(0, pageSize + 1);
+		
+		/** Переход назад - выборка по убыванию id, затем восстановление порядка */
+		if (after == null && before != null) {
+			UserPage page = loadPageBefore(before, limit, pageSize, true);
+			return page != null ? page : loadPage(null, null, pageSize);
+		}
+		
+		/** Переход вперед (или первая страница) */
+		List<UserSummary> page = users.findPageAfter(after == null ? 0 : after, limit);
+		if (page.isEmpty() && after != null) {
+			UserPage last = loadPageBefore(after + 1, limit, pageSize, false);
+			return last != null ? last : loadPage(null, null, pageSize);
+		}
+		boolean hasNext = page.size() > pageSize;
+		if (hasNext) {
+			page = page.subList(0, pageSize);
+		}
+		return new UserPage(page, after != null, hasNext, pageSize);
+	}
+	/** конец loadPage() */
+	
+	
+	/**
+	 * Страница пользователей перед курсором (выборка по убыванию id, затем восстановление порядка)
+	 * 
+	 * @param before курсор (id первого пользователя следующей страницы)
+	 * @param limit размер выборки (размер страницы и одна запись)
+	 * @param pageSize размер страницы
+	 * @param hasNext есть следующая страница
+	 * @return страница пользователей, null - перед курсором пользователей нет
+	 */
+	private UserPage loadPageBefore(int before, PageRequest limit, int pageSize, boolean hasNext) {
+		
+		List<UserSummary> page = users.findPageBefore(before, limit);
+		if (page.isEmpty()) {
+			return null;
+		}
+		boolean hasPrev = page.size() > pageSize;
+		if (hasPrev) {
+			page = page.subList(0, pageSize);
+		}
+		Collections.reverse(page);
+		return new UserPage(page, hasPrev, hasNext, pageSize);
+	}
+	/** конец loadPageBefore() */
+	
+
+	/**
+	 * Массовый импорт пользователей администратором из CSV файла. Обработка POST запроса
+	 * http://url_ресурса/adminMode/users/import (multipart/form-data, поле file)
+	 * Формат файла - UserCsv, кодировка UTF-8
+	 * 
+	 * @param file CSV файл пользователей
+	 * @param session сессия пользователя, используется для авторизации администратора
+	 * @return отчет об импорте (JSON)
+	 * @return статус 403, если администратор не авторизован
+	 * @throws Exception если возникли проблемы с чтением файла или доступом к БД
+	 */
+	@RequestMapping(value = "/adminMode/users/import", method = RequestMethod.POST, 
+			consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+	public ResponseEntity<ImportReport> importUsersCsv(
+			@RequestPart("file") MultipartFile file, HttpSession session) throws Exception {
+		
+		if (!isAuthenticated(session, ADMIN_LOGIN)) {
+			return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+		}
+		return ResponseEntity.ok(userImport.importCsv(new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8)));
+	}
+	/** конец importUsersCsv() */
+	
+	
+	/**
+	 * Массовый импорт пользователей администратором из JSON массива. Обработка POST запроса
+	 * http://url_ресурса/adminMode/users/import (application/json)
+	 * 
+	 * @param rows пользователи (поля класса User)
+	 * @param session сессия пользователя, используется для авторизации администратора
+	 * @return отчет об импорте (JSON)
+	 * @return статус 403, если администратор не авторизован
+	 * @throws Exception если возникли проблемы с доступом к БД
+	 */
+	@RequestMapping(value = "/adminMode/users/import", method = RequestMethod.POST, 
+			consumes = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<ImportReport> importUsersJson(
+			@RequestBody List<User> rows, HttpSession session) throws Exception {
+		
+		if (!isAuthenticated(session, ADMIN_LOGIN)) {
+			return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+		}
+		return ResponseEntity.ok(userImport.importUsers(rows));
+	}
+	/** конец importUsersJson() */
 	
 
+	/**
+	 * Экспорт всех пользователей (без администратора) для администратора. Обработка GET запроса
+	 * http://url_ресурса/adminMode/users/export?format={csv|ndjson}&gzip={true|false}
+	 * Данные передаются клиенту по мере чтения из БД, без построения списка в памяти
+	 * 
+	 * @param format формат экспорта: csv (по умолчанию) или ndjson, другой формат - статус 400
+	 * @param gzip сжатие файла gzip
+	 * @param session сессия пользователя, используется для авторизации администратора
+	 * @param response ответ, в который записывается файл экспорта
+	 * @throws Exception если возникли проблемы с доступом к БД или записью ответа
+	 */
+	@RequestMapping(value = "/adminMode/users/export", method = RequestMethod.GET)
+	public void exportUsers(
+			@RequestParam(value = "format", required = false, defaultValue = "csv") String format,
+			@RequestParam(value = "gzip", required = false, defaultValue = "false") boolean gzip,
+			HttpSession session, HttpServletResponse response) throws Exception {
+		
+		if (!isAuthenticated(session, ADMIN_LOGIN)) {
+			response.sendError(HttpServletResponse.SC_FORBIDDEN);
+			return;
+		}
+		
+		UserExportService.Format exportFormat = UserExportService.Format.of(format);
+		if (exportFormat == null) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+					"Неизвестный формат экспорта " + format + ", допустимые форматы: csv, ndjson");
+			return;
+		}
+		String fileName = "users." + exportFormat.getExtension() + (gzip ? ".gz" : "");
+		response.setContentType(gzip ? "application/gzip" : exportFormat.getContentType() + ";charset=UTF-8");
+		response.setHeader("Content-Disposition", "attachment; filename=" + fileName);
+		
+		OutputStream out = gzip ? new GZIPOutputStream(response.getOutputStream(), 8192) : response.getOutputStream();
+		userExport.export(exportFormat, out);
+		out.close();
+	}
+	/** конец exportUsers() */
+	
+
+	/**
+	 * Статистика кэшей для администратора. Обработка GET запроса
+	 * http://url_ресурса/adminMode/cache
+	 * 
+	 * @param session сессия пользователя, используется для авторизации администратора
+	 * @return статистика кэша профилей, кэша строк списков, кэшей Hibernate и фильтра логинов (JSON)
+	 * @return статус 403, если администратор не авторизован
+	 */
+	@RequestMapping(value = "/adminMode/cache", method = RequestMethod.GET)
+	public ResponseEntity<Map<String, Object>> cacheStatistics(HttpSession session) {
+		
+		if (!isAuthenticated(session, ADMIN_LOGIN)) {
+			return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+		}
+		Map<String, Object> statistics = new LinkedHashMap<>();
+		statistics.put("profileCache", profiles.statistics());
+		statistics.put("rowCache", userRows.statistics());
+		statistics.put("hibernate", hibernateCache.statistics());
+		statistics.put("loginFilter", loginAvailability.statistics());
+		return ResponseEntity.ok(statistics);
+	}
+	/** конец cacheStatistics() */
+	
+
+	/**
+	 * Статистика пулов потоков для администратора. Обработка GET запроса
+	 * http://url_ресурса/adminMode/executors
+	 * 
+	 * @param session сессия пользователя, используется для авторизации администратора
+	 * @return статистика пулов dbExecutor, проверки паролей и рассылки изменений, подписчиков рассылки,
+	 *         доставки журнала изменений внешним системам (JSON)
+	 * @return статус 403, если администратор не авторизован
+	 */
+	@RequestMapping(value = "/adminMode/executors", method = RequestMethod.GET)
+	public ResponseEntity<Map<String, Object>> executorStatistics(HttpSession session) {
+		
+		if (!isAuthenticated(session, ADMIN_LOGIN)) {
+			return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+		}
+		Map<String, Object> statistics = new LinkedHashMap<>();
+		statistics.put("db", dbExecutor.statistics());
+		statistics.put("password", passwordExecutor.statistics());
+		statistics.put("events", eventExecutor.statistics());
+		statistics.put("eventSender", eventSenderExecutor.statistics());
+		statistics.put("userEvents", userEvents.statistics());
+		statistics.put("userOutbox", userOutbox.statistics());
+		return ResponseEntity.ok(statistics);
+	}
+	/** конец executorStatistics() */
+	
+
+	/**
+	 * Статистика пула соединений БД для администратора. Обработка GET запроса
+	 * http://url_ресурса/adminMode/pool
+	 * 
+	 * @param session сессия пользователя, используется для авторизации администратора
+	 * @return статистика пула соединений (JSON)
+	 * @return статус 403, если администратор не авторизован
+	 */
+	@RequestMapping(value = "/adminMode/pool", method = RequestMethod.GET)
+	public ResponseEntity<Map<String, Object>> connectionPoolStatistics(HttpSession session) {
+		
+		if (!isAuthenticated(session, ADMIN_LOGIN)) {
+			return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+		}
+		return ResponseEntity.ok(connectionPool.statistics());
+	}
+	/** конец connectionPoolStatistics() */
+	
+
+	/**
+	 * Обработка исключений: перегрузка пула (задача отклонена) или ответ асинхронного
+	 * обработчика не получен за время spring.mvc.async.request-timeout
+	 * 
+	 * @param e - исключение
+	 * @return представление index со статусом 503, с указанием сообщения о перегрузке
+	 */
+	@ExceptionHandler(value = { TaskRejectedException.class, AsyncRequestTimeoutException.class })
+	public ModelAndView handleOverload(Exception e) {
+		
+		return busy();
+	}
+	/** конец handleOverload() */
+	
+	
 	/**
 	 * Обработка исключений класса
 	 * Класс исключений Exception
@@ -0,0 +1,40 @@
+package berezin.school.controllers;
+/**
+ * Класс SessionLoginInterceptor - вход в систему в потоке обработки запроса.
+ * Обработчики входа и регистрации (login, postUser) проверяют пароль и сохраняют пользователя
+ * в пулах passwordExecutor и dbExecutor и возвращают только результат: логин
+ * аутентифицированного пользователя в модели (атрибут AUTHENTICATED_LOGIN).
+ * Сессия создается (идентификатор меняется, чтобы исключить фиксацию сессии) и логин
+ * сохраняется в ней здесь - при повторной (асинхронной) передаче запроса контейнером,
+ * до отображения представления: HttpServletRequest не используется из потоков пулов
+ */
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+@Component
+public class SessionLoginInterceptor extends HandlerInterceptorAdapter {
+
+	/** Атрибут модели: логин аутентифицированного пользователя (в представление не передается) */
+	static final String AUTHENTICATED_LOGIN = "authenticatedLogin";
+
+	@Override
+	public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler,
+			ModelAndView modelAndView) {
+
+		if (modelAndView == null) {
+			return;
+		}
+		Object login = modelAndView.getModel().remove(AUTHENTICATED_LOGIN);
+		if (login != null) {
+			HttpSession session = request.getSession();
+			request.changeSessionId();
+			session.setAttribute(ApplicationController.SESSION_LOGIN, login);
+		}
+	}
+
+}
@@ -0,0 +1,76 @@
+package berezin.school.events;
+/**
+ * Класс UserChange - запись журнала изменений пользователей (таблица user_changes,
+ * миграция V8__user_changes_outbox.sql), доставляемая внешним системам (UserChangeRelay).
+ * id - номер записи: при повторной доставке получатель пропускает уже полученные записи.
+ * user - данные пользователя после изменения (при удалении - до удаления), без пароля
+ */
+
+import java.util.Date;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.annotation.JsonRawValue;
+
+@JsonPropertyOrder({ "id", "operation", "userId", "login", "changedAt", "user" })
+public class UserChange {
+
+	private final long id;
+
+	/** Номер транзакции изменения (порядок чтения журнала) */
+	private final long txid;
+
+	/** INSERT, UPDATE или DELETE */
+	private final String operation;
+
+	private final int userId;
+
+	private final String login;
+
+	/** Данные пользователя (JSON) */
+	private final String user;
+
+	private final Date changedAt;
+
+	/** Конструктор */
+	public UserChange(long id, long txid, String operation, int userId, String login, String user, Date changedAt) {
+		this.id = id;
+		this.txid = txid;
+		this.operation = operation;
+		this.userId = userId;
+		this.login = login;
+		this.user = user;
+		this.changedAt = changedAt;
+	}
+
+	/** Геттеры */
+	public long getId() {
+		return id;
+	}
+
+	@JsonIgnore
+	public long getTxid() {
+		return txid;
+	}
+
+	public String getOperation() {
+		return operation;
+	}
+
+	public int getUserId() {
+		return userId;
+	}
+
+	public String getLogin() {
+		return login;
+	}
+
+	@JsonRawValue
+	public String getUser() {
+		return user;
+	}
+
+	public Date getChangedAt() {
+		return changedAt;
+	}
+
+}
@@ -0,0 +1,36 @@
+package berezin.school.events;
+/**
+ * Класс UserChangedEvent - событие изменения пользователя (добавление, изменение, удаление)
+ * Публикуется контроллером и сервисами после записи в БД через ApplicationEventPublisher.
+ * Используется для согласования кэшей и производных данных с таблицей users
+ */
+
+public class UserChangedEvent {
+
+	/** Тип изменения */
+	public enum Type {
+		CREATED, UPDATED, DELETED
+	}
+
+	/** Тип изменения */
+	private final Type type;
+
+	/** Логин измененного пользователя */
+	private final String login;
+
+	/** Конструктор */
+	public UserChangedEvent(Type type, String login) {
+		this.type = type;
+		this.login = login;
+	}
+
+	/** Геттеры */
+	public Type getType() {
+		return type;
+	}
+
+	public String getLogin() {
+		return login;
+	}
+
+}
@@ -0,0 +1,27 @@
+package berezin.school.events;
+/**
+ * Класс UsersImportedEvent - событие добавления пакета пользователей массовым импортом
+ * Публикуется UserImportService после записи пакета в БД (до фиксации транзакции пакета).
+ * Отдельное событие на пакет, а не UserChangedEvent на пользователя: импорт добавляет
+ * только новых пользователей, кэши профилей не изменяются
+ */
+
+import java.util.Collections;
+import java.util.List;
+
+public class UsersImportedEvent {
+
+	/** Логины добавленных пользователей */
+	private final List<String> logins;
+
+	/** Конструктор */
+	public UsersImportedEvent(List<String> logins) {
+		this.logins = Collections.unmodifiableList(logins);
+	}
+
+	/** Геттеры */
+	public List<String> getLogins() {
+		return logins;
+	}
+
+}
@@ -0,0 +1,98 @@
+package berezin.school.forms;
+/**
+ * Класс UserPatch - измененные поля формы пользователя (частичное обновление, PATCH)
+ * Из параметров запроса выбираются только изменяемые поля класса User
+ * (UserRepositoryImpl.UPDATABLE_FIELDS), значения приводятся к типам полей
+ * и проверяются ограничениями, описанными в классе User
+ */
+
+import java.sql.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import berezin.school.repositories.UserRepositoryImpl;
+import berezin.school.user.User;
+
+public class UserPatch {
+
+	/** Поле пароля, пустое значение - пароль не изменяется */
+	private static final String PASSWORD = "password";
+
+	/** Поле даты рождения, передается в формате yyyy-mm-dd */
+	private static final String BIRTH_DATE = "birthDate";
+
+	/** Измененные поля, прошедшие валидацию: имя поля класса User - новое значение */
+	private final Map<String, Object> fields = new LinkedHashMap<>();
+
+	/** Поля, не прошедшие валидацию: имя поля - сообщение об ошибке */
+	private final Map<String, String> errors = new LinkedHashMap<>();
+
+	/** Отклоненные значения полей с ошибками (для повторного вывода в форме) */
+	private final Map<String, String> rejected = new LinkedHashMap<>();
+
+	/**
+	 * Выбор и валидация измененных полей из параметров запроса
+	 * Пустая дата рождения - удаление значения, пустой пароль - пароль не изменяется
+	 * 
+	 * @param params параметры запроса (остальные параметры игнорируются)
+	 * @param validator валидатор ограничений класса User
+	 * @return измененные поля
+	 */
+	public static UserPatch of(Map<String, String> params, Validator validator) {
+
+		UserPatch patch = new UserPatch();
+		for (String field : UserRepositoryImpl.UPDATABLE_FIELDS) {
+			if (!params.containsKey(field)) {
+				continue;
+			}
+			String value = params.get(field);
+			if (PASSWORD.equals(field) && (value == null || value.isEmpty())) {
+				continue;
+			}
+			if (BIRTH_DATE.equals(field)) {
+				try {
+					patch.fields.put(field, value == null || value.isEmpty() ? null : Date.valueOf(value));
+				} catch (IllegalArgumentException e) {
+					patch.reject(field, value, "Дата в формате гггг-мм-дд");
+				}
+				continue;
+			}
+			Set<ConstraintViolation<User>> violations = validator.validateValue(User.class, field, value);
+			if (violations.isEmpty()) {
+				patch.fields.put(field, value);
+			} else {
+				patch.reject(field, value, violations.iterator().next().getMessage());
+			}
+		}
+		return patch;
+	}
+	/** конец of() */
+
+	private void reject(String field, String value, String message) {
+		errors.put(field, message);
+		rejected.put(field, value);
+	}
+
+	public Map<String, Object> getFields() {
+		return fields;
+	}
+
+	public Map<String, String> getErrors() {
+		return errors;
+	}
+
+	public Map<String, String> getRejected() {
+		return rejected;
+	}
+
+	public boolean isEmpty() {
+		return fields.isEmpty();
+	}
+
+	public boolean hasErrors() {
+		return !errors.isEmpty();
+	}
+
+}
@@ -0,0 +1,194 @@
+package berezin.school.repositories;
+/**
+ * Класс UserChangeRepository - чтение журнала изменений пользователей (user_changes)
+ * и позиций доставки получателям (user_changes_checkpoints), миграция V8__user_changes_outbox.sql
+ * Запросы выполняются в транзакциях на основной БД (журнал реплики отстает).
+ * Журнал читается в порядке (txid, id) только для завершенных транзакций: номер транзакции
+ * меньше xmin снимка - все транзакции с меньшими номерами зафиксированы или отменены, новые
+ * записи журнала будут только после прочитанных. Долгая транзакция задерживает чтение журнала
+ */
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TemporalType;
+import org.hibernate.Session;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import berezin.school.events.UserChange;
+
+@Repository
+public class UserChangeRepository {
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	/**
+	 * Наличие журнала изменений (таблица создается миграцией PostgreSQL; при создании
+	 * схемы средствами Hibernate журнала нет)
+	 *
+	 * @return true - таблица user_changes существует
+	 */
+	@Transactional
+	public boolean isAvailable() {
+
+		return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+			try (ResultSet tables = connection.getMetaData().getTables(null, null, "user_changes", null)) {
+				return tables.next();
+			}
+		});
+	}
+	/** конец isAvailable() */
+
+	/**
+	 * Позиция доставки получателю; позиция нового получателя - начало журнала
+	 *
+	 * @param consumer имя получателя
+	 * @return последняя доставленная запись
+	 */
+	@Transactional
+	public Checkpoint findCheckpoint(String consumer) {
+
+		entityManager.createNativeQuery("insert into user_changes_checkpoints (consumer) values (:consumer) "
+				+ "on conflict do nothing")
+				.setParameter("consumer", consumer)
+				.executeUpdate();
+		Object[] row = (Object[]) entityManager.createNativeQuery(
+				"select last_txid, last_id from user_changes_checkpoints where consumer = :consumer")
+				.setParameter("consumer", consumer)
+				.getSingleResult();
+		return new Checkpoint(((Number) row[0]).longValue(), ((Number) row[1]).longValue());
+	}
+	/** конец findCheckpoint() */
+
+	/**
+	 * Записи журнала завершенных транзакций после позиции доставки
+	 *
+	 * @param after позиция доставки
+	 * @param limit максимальное количество записей
+	 * @return записи в порядке (txid, id)
+	 */
+	@Transactional
+	public List<UserChange> findCommittedAfter(Checkpoint after, int limit) {
+
+		@SuppressWarnings("unchecked")
+		List<Object[]> rows = entityManager.createNativeQuery(
+				"select id, txid, operation, user_id, login, cast(payload as text), changed_at from user_changes "
+						+ "where (txid, id) > (:txid, :id) and txid < txid_snapshot_xmin(txid_current_snapshot()) "
+						+ "order by txid, id")
+				.setParameter("txid", after.getTxid())
+				.setParameter("id", after.getId())
+				.setMaxResults(limit)
+				.getResultList();
+
+		List<UserChange> result = new ArrayList<>(rows.size());
+		for (Object[] row : rows) {
+			result.add(new UserChange(((Number) row[0]).longValue(), ((Number) row[1]).longValue(),
+					(String) row[2], ((Number) row[3]).intValue(), (String) row[4], (String) row[5], (Date) row[6]));
+		}
+		return result;
+	}
+	/** конец findCommittedAfter() */
+
+	/**
+	 * Сохранение позиции доставки получателю
+	 *
+	 * @param consumer имя получателя
+	 * @param checkpoint последняя доставленная запись
+	 */
+	@Transactional
+	public void saveCheckpoint(String consumer, Checkpoint checkpoint) {
+
+		entityManager.createNativeQuery("update user_changes_checkpoints set last_txid = :txid, last_id = :id, "
+				+ "updated_at = now() where consumer = :consumer")
+				.setParameter("txid", checkpoint.getTxid())
+				.setParameter("id", checkpoint.getId())
+				.setParameter("consumer", consumer)
+				.executeUpdate();
+	}
+	/** конец saveCheckpoint() */
+
+	/**
+	 * Количество записей журнала после позиции доставки (включая незавершенные транзакции)
+	 *
+	 * @param after позиция доставки
+	 * @return количество недоставленных записей
+	 */
+	@Transactional
+	public long countAfter(Checkpoint after) {
+
+		return ((Number) entityManager.createNativeQuery(
+				"select count(*) from user_changes where (txid, id) > (:txid, :id)")
+				.setParameter("txid", after.getTxid())
+				.setParameter("id", after.getId())
+				.getSingleResult()).longValue();
+	}
+	/** конец countAfter() */
+
+	/**
+	 * Версия журнала (UserListVersion): наибольший номер завершенной транзакции (txid меньше xmin
+	 * снимка) и количество видимых записей более поздних транзакций. Транзакция, завершенная
+	 * после предыдущего чтения, либо увеличивает наибольший номер (ее номер больше номеров
+	 * всех завершенных транзакций), либо добавляет записи к более поздним: любое зафиксированное
+	 * изменение пользователей изменяет версию. Оба запроса выполняются по индексу user_changes_txid_idx
+	 *
+	 * @return наибольший номер завершенной транзакции и количество записей более поздних транзакций
+	 */
+	@Transactional
+	public long[] findVersion() {
+
+		Object[] row = (Object[]) entityManager.createNativeQuery(
+				"select (select coalesce(max(txid), 0) from user_changes where txid < s.xmin), "
+						+ "(select count(*) from user_changes where txid >= s.xmin) "
+						+ "from (select txid_snapshot_xmin(txid_current_snapshot()) as xmin) s")
+				.getSingleResult();
+		return new long[] { ((Number) row[0]).longValue(), ((Number) row[1]).longValue() };
+	}
+	/** конец findVersion() */
+
+	/**
+	 * Удаление записей журнала, доставленных всем получателям и записанных раньше указанного времени.
+	 * Записи последней завершенной транзакции не удаляются: версия журнала (findVersion)
+	 * не возвращается к прежнему значению
+	 *
+	 * @param before время записи
+	 * @return количество удаленных записей
+	 */
+	@Transactional
+	public int deleteDelivered(Date before) {
+
+		return entityManager.createNativeQuery("delete from user_changes c where c.changed_at < :before "
+				+ "and c.txid < (select max(txid) from user_changes "
+				+ "where txid < txid_snapshot_xmin(txid_current_snapshot())) "
+				+ "and not exists (select 1 from user_changes_checkpoints p "
+				+ "where (p.last_txid, p.last_id) < (c.txid, c.id))")
+				.setParameter("before", before, TemporalType.TIMESTAMP)
+				.executeUpdate();
+	}
+	/** конец deleteDelivered() */
+
+	/** Позиция в журнале: номер транзакции и номер записи */
+	public static final class Checkpoint {
+
+		private final long txid;
+
+		private final long id;
+
+		public Checkpoint(long txid, long id) {
+			this.txid = txid;
+			this.id = id;
+		}
+
+		public long getTxid() {
+			return txid;
+		}
+
+		public long getId() {
+			return id;
+		}
+	}
+
+}
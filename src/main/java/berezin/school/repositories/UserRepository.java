@@ -1,42 +1,126 @@
 package berezin.school.repositories;
 /**
  * Интерфейс UserRepository. 
- * Расширение CrudRepository
+ * Расширение CrudRepository и UserRepositoryCustom (частичное обновление)
  * Описание методов-запросов к БД
+ * Репозиторий не публикуется Spring Data REST (сущности с паролями, списки без страниц):
+ * JSON API пользователей - ApiController
  */
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
+import javax.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
 import org.springframework.transaction.annotation.Transactional;
 import berezin.school.user.User;
+import berezin.school.user.UserExportRow;
+import berezin.school.user.UserSummary;
 
 /**
  * Используем класс(сущность) User, тип первичного ключа Integer (поле User.id)
  */
-public interface UserRepository extends CrudRepository<User, Integer> {
+@RepositoryRestResource(exported = false)
+public interface UserRepository extends CrudRepository<User, Integer>, UserRepositoryCustom {
 
 	/**
 	 * Запрос
 	 * Получить всех пользователей, кроме администратора
 	 * SELECT * FROM users WHERE NOT login = 'admin
+	 * Сущности загружаются только для чтения (без снимков состояния для проверки изменений),
+	 * результат хранится в кэше запросов Hibernate до изменения таблицы users
 	 * @return - список пользователей без администратора
 	 */
+	@Transactional(readOnly = true)
+	@QueryHints({ @QueryHint(name = "org.hibernate.readOnly", value = "true"),
+			@QueryHint(name = "org.hibernate.cacheable", value = "true") })
 	@Query("from User user where not user.login = 'admin'")
 	List<User> findAllLoginNotLikeAdmin();
-	
+
+	/**
+	 * Запрос
+	 * Потоковое чтение всех пользователей, кроме администратора (экспорт)
+	 * SELECT id, login, name, surname, adress, birth_date, info FROM users WHERE NOT login = 'admin' ORDER BY id
+	 * Строки читаются курсором БД порциями по fetchSize в объекты UserExportRow (не сущности:
+	 * строки экспорта не попадают в контекст персистентности и кэш второго уровня).
+	 * Поток должен читаться и закрываться внутри транзакции вызывающего метода
+	 * @return - поток данных пользователей без администратора, упорядоченный по id
+	 */
+	@Transactional(readOnly = true)
+	@QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "500"))
+	@Query("select new berezin.school.user.UserExportRow(user.id, user.login, user.name, user.surName, "
+			+ "user.adress, user.birthDate, user.info) from User user where not user.login = 'admin' order by user.id")
+	Stream<UserExportRow> streamAllLoginNotLikeAdmin();
+
+	/**
+	 * Запрос
+	 * Потоковое чтение логинов всех пользователей (фильтр логинов LoginAvailabilityService)
+	 * SELECT login FROM users
+	 * Строки читаются курсором БД порциями по fetchSize, без загрузки сущностей.
+	 * Поток должен читаться и закрываться внутри транзакции вызывающего метода
+	 * @return - поток логинов
+	 */
+	@Transactional(readOnly = true)
+	@QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+	@Query("select user.login from User user")
+	Stream<String> streamAllLogins();
+
+	/**
+	 * Запрос
+	 * Страница пользователей (кроме администратора) после указанного id (keyset-пагинация)
+	 * SELECT id, login, name, surname, birth_date, version FROM users 
+	 * WHERE NOT login = 'admin' AND id > ? ORDER BY id LIMIT ?
+	 * Поиск по первичному ключу, без OFFSET - время запроса не зависит от номера страницы.
+	 * Проекция UserSummary без полей password, adress, info, транзакция только для чтения
+	 * @param afterId - id последнего пользователя предыдущей страницы (0 - первая страница)
+	 * @param pageable - размер страницы (номер страницы всегда 0)
+	 * @return - список кратких данных пользователей, упорядоченный по возрастанию id
+	 */
+	@Transactional(readOnly = true)
+	@Query("select new berezin.school.user.UserSummary(user.id, user.login, user.name, user.surName, user.birthDate, "
+			+ "user.version) "
+			+ "from User user where not user.login = 'admin' and user.id > :afterId order by user.id asc")
+	List<UserSummary> findPageAfter(@Param("afterId") int afterId, Pageable pageable);
+
 	/**
 	 * Запрос
-	 * Получить пользователя по логину и паролю
-	 * SELECT * FROM users WHERE login = ? AND  password = ?
-	 * @param - login, password. Аннотация Param - связь параметров запроса с параметрами метода
-	 * @return - объект класса Users с соответствующим логином и паролем
+	 * Потоковое чтение страницы пользователей (кроме администратора) после указанного id (JSON API)
+	 * SELECT id, login, name, surname, birth_date, version FROM users 
+	 * WHERE NOT login = 'admin' AND id > ? ORDER BY id LIMIT ?
+	 * Строки читаются курсором БД порциями по fetchSize и записываются клиенту по мере чтения.
+	 * Поток должен читаться и закрываться внутри транзакции вызывающего метода
+	 * @param afterId - id последнего пользователя предыдущей страницы (0 - первая страница)
+	 * @param pageable - размер страницы (номер страницы всегда 0)
+	 * @return - поток кратких данных пользователей, упорядоченный по возрастанию id
 	 */
-	@Query("from User user where user.login = :login and user.password = :password")
-	User findByLoginAndPassword(@Param("login") String login, @Param("password") String password);
+	@Transactional(readOnly = true)
+	@QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "500"))
+	@Query("select new berezin.school.user.UserSummary(user.id, user.login, user.name, user.surName, user.birthDate, "
+			+ "user.version) "
+			+ "from User user where not user.login = 'admin' and user.id > :afterId order by user.id asc")
+	Stream<UserSummary> streamPageAfter(@Param("afterId") int afterId, Pageable pageable);
 
+	/**
+	 * Запрос
+	 * Страница пользователей (кроме администратора) перед указанным id (переход назад)
+	 * SELECT id, login, name, surname, birth_date, version FROM users 
+	 * WHERE NOT login = 'admin' AND id < ? ORDER BY id DESC LIMIT ?
+	 * @param beforeId - id первого пользователя следующей страницы
+	 * @param pageable - размер страницы (номер страницы всегда 0)
+	 * @return - список кратких данных пользователей, упорядоченный по убыванию id
+	 */
+	@Transactional(readOnly = true)
+	@Query("select new berezin.school.user.UserSummary(user.id, user.login, user.name, user.surName, user.birthDate, "
+			+ "user.version) "
+			+ "from User user where not user.login = 'admin' and user.id < :beforeId order by user.id desc")
+	List<UserSummary> findPageBefore(@Param("beforeId") int beforeId, Pageable pageable);
+	
 	/**
 	 * Запрос
 	 * Наличие пользователя имеющего соответвующий логин
@@ -51,19 +135,63 @@ public interface UserRepository extends CrudRepository<User, Integer> {
 	 * Получить пользователя по логину
 	 * SELECT * FROM users WHERE login = ?
 	 * @param - login 
+	 * Результат хранится в кэше запросов Hibernate до изменения таблицы users
 	 * @return - объект класса Users с соответсвующим логином
 	 */
+	@QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
 	User findByLogin(String login);
+
+	/**
+	 * Запрос
+	 * Логины из списка, уже существующие в БД (проверка пакета при массовом импорте)
+	 * SELECT login FROM users WHERE login IN (?, ?, ...)
+	 * @param logins - проверяемые логины
+	 * @return - существующие логины
+	 */
+	@Query("select user.login from User user where user.login in :logins")
+	List<String> findExistingLogins(@Param("logins") Collection<String> logins);
+
+	/**
+	 * Запрос
+	 * Краткие данные пользователей по списку логинов (события изменений списка пользователей)
+	 * SELECT id, login, name, surname, birth_date, version FROM users WHERE login IN (?, ?, ...)
+	 * @param logins - логины пользователей
+	 * @return - список кратких данных найденных пользователей
+	 */
+	@Transactional(readOnly = true)
+	@Query("select new berezin.school.user.UserSummary(user.id, user.login, user.name, user.surName, user.birthDate, "
+			+ "user.version) "
+			+ "from User user where user.login in :logins")
+	List<UserSummary> findSummariesByLoginIn(@Param("logins") Collection<String> logins);
 	
 	/**
 	 * Запрос
 	 * Удаление пользователя по логину
 	 * Метод - модифицирющий запрос, являющийся транзакцией 
 	 * DELETE FROM users WHERE login = ?
+	 * Один оператор DELETE, без предварительной загрузки сущности в контекст персистентности
 	 * @param - login 
 	 * @return - 0, 1(удалилась запись или нет)
 	 */
 	@Modifying
-    @Transactional
-	int deleteByLogin(String login);
+	@Transactional
+	@Query("delete from User user where user.login = :login")
+	int deleteByLogin(@Param("login") String login);
+
+	/**
+	 * Запрос
+	 * Замена пароля в открытом тексте хэшем при входе пользователя (PasswordService)
+	 * Метод - модифицирющий запрос, являющийся транзакцией
+	 * UPDATE users SET password = ? WHERE login = ? AND password = ?
+	 * Версия и время изменения не изменяются: данные пользователя не меняются, открытые формы
+	 * сохраняются без ошибки изменения в другом сеансе. Пароль, измененный после проверки, не заменяется
+	 * @param login - логин пользователя
+	 * @param legacy - пароль в открытом тексте, проверенный при входе
+	 * @param hash - хэш пароля
+	 * @return - 0, 1(заменен пароль или нет)
+	 */
+	@Modifying
+	@Transactional
+	@Query("update User user set user.password = :hash where user.login = :login and user.password = :legacy")
+	int replaceLegacyPassword(@Param("login") String login, @Param("legacy") String legacy, @Param("hash") String hash);
 }
@@ -0,0 +1,58 @@
+package berezin.school.repositories;
+/**
+ * Интерфейс UserRepositoryCustom. 
+ * Запросы к БД, которые не выражаются аннотацией Query 
+ * (реализация - класс UserRepositoryImpl, подключается к UserRepository Spring Data)
+ */
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import berezin.school.user.UserSummary;
+
+public interface UserRepositoryCustom {
+
+	/**
+	 * Запрос
+	 * Частичное обновление пользователя: изменяются только переданные поля, версия увеличивается,
+	 * время изменения устанавливается
+	 * UPDATE users SET name = ?, info = ?, version = version + 1, updated_at = ? WHERE login = ? AND version = ?
+	 * Один оператор UPDATE, без предварительного чтения записи
+	 * @param login - логин обновляемого пользователя
+	 * @param version - версия записи, прочитанная формой (null - без проверки версии, только для
+	 *                  изменений приложения; изменения пользователей всегда передают версию)
+	 * @param fields - новые значения полей (имя поля класса User - значение), 
+	 *                 допустимые поля - UserRepositoryImpl.UPDATABLE_FIELDS
+	 * @return - 0, 1(обновилась запись или нет; 0 - пользователь отсутствует или версия устарела)
+	 */
+	int updateFields(String login, Integer version, Map<String, Object> fields);
+
+	/**
+	 * Запрос
+	 * Удаление пользователей по списку логинов (администратор не удаляется)
+	 * Один оператор DELETE; в PostgreSQL возвращаются логины удаленных записей
+	 * DELETE FROM users WHERE login IN (?, ?, ...) AND NOT login = 'admin' RETURNING id, login
+	 * Логины, отсутствующие в БД или удаленные параллельно другим запросом, не возвращаются.
+	 * В других БД (разработка, тесты) - JPQL DELETE, возвращающий только количество: если удалена
+	 * хотя бы одна запись, возвращаются все запрошенные логины, кроме администратора
+	 * @param logins - логины удаляемых пользователей
+	 * @return - логины удаленных пользователей
+	 */
+	List<String> deleteLogins(Collection<String> logins);
+
+	/**
+	 * Запрос
+	 * Поиск пользователей (кроме администратора) по логину, имени и фамилии.
+	 * Каждое слово запроса должно совпасть с началом логина, имени или фамилии пользователя
+	 * (fuzzy = false) либо быть похожим на имя или фамилию пользователя (fuzzy = true, опечатки).
+	 * Результаты совпадения с началом упорядочены по совпавшему значению, похожие - по сходству
+	 * слова запроса (самое длинное слово) с именем или фамилией; затем по id.
+	 * Транзакция только для чтения (выполняется на реплике)
+	 * @param words - слова запроса в нижнем регистре (не пустой список)
+	 * @param fuzzy - поиск похожих имен и фамилий вместо совпадения с началом
+	 * @param offset - количество пропускаемых результатов
+	 * @param limit - максимальное количество результатов
+	 * @return - список кратких данных найденных пользователей
+	 */
+	List<UserSummary> search(List<String> words, boolean fuzzy, int offset, int limit);
+}
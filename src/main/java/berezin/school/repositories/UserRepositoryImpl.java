@@ -0,0 +1,335 @@
+package berezin.school.repositories;
+/**
+ * Класс UserRepositoryImpl - реализация UserRepositoryCustom
+ * Запрос UPDATE строится из переданных полей, остальные столбцы не изменяются.
+ * Версия записи проверяется условием запроса (оптимистическая блокировка)
+ * Поиск пользователей в PostgreSQL выполняется индексами миграции V6__users_search_trgm.sql,
+ * в других БД - запросом JPQL без индексов (только совпадение с началом)
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import org.hibernate.Cache;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import berezin.school.user.User;
+import berezin.school.user.UserSummary;
+
+public class UserRepositoryImpl implements UserRepositoryCustom {
+
+	/** Поля класса User, изменяемые частичным обновлением (id и login не изменяются) */
+	public static final Set<String> UPDATABLE_FIELDS = Collections.unmodifiableSet(new LinkedHashSet<>(
+			Arrays.asList("password", "name", "surName", "adress", "birthDate", "info")));
+
+	/**
+	 * Выражения поиска по совпадению с началом - выражения индексов users_*_search_idx:
+	 * значение в нижнем регистре с побайтовым сравнением "C"
+	 */
+	private static final String SURNAME_KEY = "lower(surname) COLLATE \"C\"";
+
+	private static final String NAME_KEY = "lower(name) COLLATE \"C\"";
+
+	private static final String LOGIN_KEY = "lower(login) COLLATE \"C\"";
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	/** Минимальное сходство (0..1) слова словаря user_search_words со словом запроса */
+	@Value("${school.search.similarity-threshold:0.3}")
+	private double similarityThreshold;
+
+	/** Количество самых похожих слов словаря, по которым ищутся пользователи */
+	@Value("${school.search.similar-words:10}")
+	private int similarWords;
+
+	/** БД - PostgreSQL (null - еще не определено) */
+	private volatile Boolean postgres;
+
+	@Override
+	@Transactional
+	public int updateFields(String login, Integer version, Map<String, Object> fields) {
+
+		if (fields.isEmpty()) {
+			return 0;
+		}
+
+		/** Имена полей подставляются в запрос только из списка UPDATABLE_FIELDS */
+		StringBuilder jpql = new StringBuilder("update User user set ");
+		String separator = "";
+		for (String field : fields.keySet()) {
+			if (!UPDATABLE_FIELDS.contains(field)) {
+				throw new IllegalArgumentException("Поле " + field + " не может быть изменено");
+			}
+			jpql.append(separator).append("user.").append(field).append(" = :").append(field);
+			separator = ", ";
+		}
+		jpql.append(", user.version = user.version + 1, user.updatedAt = :updatedAt where user.login = :login");
+		if (version != null) {
+			jpql.append(" and user.version = :version");
+		}
+
+		Query query = entityManager.createQuery(jpql.toString());
+		fields.forEach(query::setParameter);
+		query.setParameter("updatedAt", new Date());
+		query.setParameter("login", login);
+		if (version != null) {
+			query.setParameter("version", version);
+		}
+		return query.executeUpdate();
+	}
+	/** конец updateFields() */
+
+	@Override
+	@Transactional
+	public List<String> deleteLogins(Collection<String> logins) {
+
+		if (logins.isEmpty()) {
+			return Collections.emptyList();
+		}
+		if (!isPostgres()) {
+			List<String> requested = new ArrayList<>(logins);
+			requested.remove("admin");
+			int count = entityManager.createQuery("delete from User user where user.login in :logins "
+					+ "and not user.login = 'admin'")
+					.setParameter("logins", logins)
+					.executeUpdate();
+			return count == 0 ? Collections.<String>emptyList() : requested;
+		}
+
+		/** Запрос, возвращающий строки, не очищает кэши Hibernate: удаленные записи вытесняются явно */
+		List<String> deleted = new ArrayList<>();
+		List<Integer> ids = new ArrayList<>();
+		for (Object row : entityManager.createNativeQuery(
+				"delete from users where login in (:logins) and not login = 'admin' returning id, login")
+				.setParameter("logins", logins)
+				.getResultList()) {
+			Object[] columns = (Object[]) row;
+			ids.add(((Number) columns[0]).intValue());
+			deleted.add((String) columns[1]);
+		}
+		if (!ids.isEmpty()) {
+			evict(ids);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					evict(ids);
+				}
+			});
+		}
+		return deleted;
+	}
+	/** конец deleteLogins() */
+
+	/**
+	 * Вытеснение удаленных пользователей из кэша второго уровня (регион User) и кэша запросов.
+	 * Выполняется при удалении и после завершения транзакции: запись, прочитанная параллельной
+	 * транзакцией до фиксации удаления, не остается в кэше
+	 */
+	private void evict(List<Integer> ids) {
+
+		Cache cache = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getCache();
+		for (Integer id : ids) {
+			cache.evictEntity(User.class, id);
+		}
+		cache.evictDefaultQueryRegion();
+	}
+
+	/** конец deleteLogins() */
+
+	@Override
+	@Transactional(readOnly = true)
+	public List<UserSummary> search(List<String> words, boolean fuzzy, int offset, int limit) {
+
+		if (!isPostgres()) {
+			return fuzzy ? Collections.<UserSummary>emptyList() : searchJpql(words, offset, limit);
+		}
+
+		/** Самое длинное слово выбирает пользователей по индексу, остальные слова - условия отбора */
+		String key = words.stream().max(Comparator.comparingInt(String::length)).get();
+		List<String> filters = new ArrayList<>(words);
+		filters.remove(key);
+		return fuzzy ? searchSimilar(key, filters, offset, limit) : searchPrefix(key, filters, offset, limit);
+	}
+	/** конец search() */
+
+	/**
+	 * Совпадение с началом фамилии, имени или логина (PostgreSQL).
+	 * По каждому полю читается не более offset + limit первых строк индекса, пользователь,
+	 * найденный по нескольким полям, учитывается один раз (по наименьшему совпавшему значению)
+	 */
+	private List<UserSummary> searchPrefix(String key, List<String> filters, int offset, int limit) {
+
+		StringBuilder sql = new StringBuilder("select id, login, name, surname, birth_date from ("
+				+ "select distinct on (id) * from (");
+		String separator = "";
+		for (String column : Arrays.asList(SURNAME_KEY, NAME_KEY, LOGIN_KEY)) {
+			sql.append(separator).append("(select id, login, name, surname, birth_date, ").append(column)
+					.append(" as matched from users where ").append(column).append(" like :key escape '\\'");
+			appendFilters(sql, filters, false);
+			sql.append(" order by ").append(column).append(", id limit :scan)");
+			separator = " union all ";
+		}
+		sql.append(") found order by id, matched) distinct_found order by matched, id");
+
+		Query query = entityManager.createNativeQuery(sql.toString());
+		query.setParameter("key", likePrefix(key));
+		setFilters(query, filters, false);
+		query.setParameter("scan", offset + limit);
+		return summaries(query, offset, limit);
+	}
+	/** конец searchPrefix() */
+
+	/**
+	 * Похожие фамилии и имена (PostgreSQL): сначала в словаре user_search_words выбираются
+	 * similarWords слов, самых похожих на key (триграммы pg_trgm), затем пользователи
+	 * с такими фамилиями или именами - в порядке сходства слова, затем id
+	 */
+	private List<UserSummary> searchSimilar(String key, List<String> filters, int offset, int limit) {
+
+		/** Порог сходства оператора % - только для текущей транзакции */
+		entityManager.createNativeQuery("select set_config('pg_trgm.similarity_threshold', :threshold, true)")
+				.setParameter("threshold", String.valueOf(similarityThreshold))
+				.getSingleResult();
+		@SuppressWarnings("unchecked")
+		List<String> similar = entityManager.createNativeQuery(
+				"select word from user_search_words where word % :key order by word <-> :key, word")
+				.setParameter("key", key)
+				.setMaxResults(similarWords)
+				.getResultList();
+		if (similar.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		StringBuilder sql = new StringBuilder("select id, login, name, surname, birth_date from ("
+				+ "select distinct on (found.id) found.*, w.rank from (values ");
+		for (int i = 0; i < similar.size(); i++) {
+			sql.append(i == 0 ? "" : ", ").append("(:similar").append(i).append(", ").append(i).append(")");
+		}
+		sql.append(") w (word, rank) cross join lateral (");
+		String separator = "";
+		for (String column : Arrays.asList(SURNAME_KEY, NAME_KEY)) {
+			sql.append(separator).append("(select id, login, name, surname, birth_date from users where ")
+					.append(column).append(" = w.word");
+			appendFilters(sql, filters, true);
+			sql.append(" order by ").append(column).append(", id limit :scan)");
+			separator = " union all ";
+		}
+		sql.append(") found order by found.id, w.rank) distinct_found order by rank, id");
+
+		Query query = entityManager.createNativeQuery(sql.toString());
+		for (int i = 0; i < similar.size(); i++) {
+			query.setParameter("similar" + i, similar.get(i));
+		}
+		setFilters(query, filters, true);
+		if (!filters.isEmpty()) {
+			query.setParameter("threshold", similarityThreshold);
+		}
+		query.setParameter("scan", offset + limit);
+		return summaries(query, offset, limit);
+	}
+	/** конец searchSimilar() */
+
+	/**
+	 * Условия отбора по остальным словам запроса и исключение администратора.
+	 * Слово совпадает с началом фамилии, имени или логина; при поиске похожих -
+	 * с началом логина или похоже на слово имени и фамилии (функция pg_trgm word_similarity)
+	 */
+	private static void appendFilters(StringBuilder sql, List<String> filters, boolean fuzzy) {
+
+		sql.append(" and not login = 'admin'");
+		for (int i = 0; i < filters.size(); i++) {
+			String parameter = ":filter" + i;
+			if (fuzzy) {
+				sql.append(" and (").append(LOGIN_KEY).append(" like ").append(parameter).append(" escape '\\'")
+						.append(" or word_similarity(:word").append(i)
+						.append(", lower(coalesce(name, '') || ' ' || coalesce(surname, ''))) >= :threshold)");
+			} else {
+				sql.append(" and (").append(SURNAME_KEY).append(" like ").append(parameter).append(" escape '\\' or ")
+						.append(NAME_KEY).append(" like ").append(parameter).append(" escape '\\' or ")
+						.append(LOGIN_KEY).append(" like ").append(parameter).append(" escape '\\')");
+			}
+		}
+	}
+
+	private static void setFilters(Query query, List<String> filters, boolean fuzzy) {
+
+		for (int i = 0; i < filters.size(); i++) {
+			query.setParameter("filter" + i, likePrefix(filters.get(i)));
+			if (fuzzy) {
+				query.setParameter("word" + i, filters.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Совпадение с началом в БД, отличных от PostgreSQL (без индексов поиска)
+	 * Все слова запроса - условия отбора, порядок - фамилия, имя, id
+	 */
+	private List<UserSummary> searchJpql(List<String> words, int offset, int limit) {
+
+		StringBuilder jpql = new StringBuilder("select new berezin.school.user.UserSummary(user.id, user.login, "
+				+ "user.name, user.surName, user.birthDate) from User user where not user.login = 'admin'");
+		for (int i = 0; i < words.size(); i++) {
+			String parameter = ":word" + i;
+			jpql.append(" and (lower(user.surName) like ").append(parameter).append(" escape '\\'")
+					.append(" or lower(user.name) like ").append(parameter).append(" escape '\\'")
+					.append(" or lower(user.login) like ").append(parameter).append(" escape '\\')");
+		}
+		jpql.append(" order by user.surName, user.name, user.id");
+
+		TypedQuery<UserSummary> query = entityManager.createQuery(jpql.toString(), UserSummary.class);
+		for (int i = 0; i < words.size(); i++) {
+			query.setParameter("word" + i, likePrefix(words.get(i)));
+		}
+		return query.setFirstResult(offset).setMaxResults(limit).getResultList();
+	}
+	/** конец searchJpql() */
+
+	/** Страница результатов запроса SQL: id, login, name, surname, birth_date */
+	private static List<UserSummary> summaries(Query query, int offset, int limit) {
+
+		query.setFirstResult(offset);
+		query.setMaxResults(limit);
+		List<UserSummary> result = new ArrayList<>();
+		for (Object row : query.getResultList()) {
+			Object[] columns = (Object[]) row;
+			result.add(new UserSummary(((Number) columns[0]).intValue(), (String) columns[1], (String) columns[2],
+					(String) columns[3], (Date) columns[4]));
+		}
+		return result;
+	}
+
+	/** Шаблон LIKE совпадения с началом: символы шаблона в слове экранируются */
+	private static String likePrefix(String word) {
+		return word.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+	}
+
+	/** Определение БД по соединению текущей транзакции (один раз) */
+	private boolean isPostgres() {
+
+		Boolean result = postgres;
+		if (result == null) {
+			result = entityManager.unwrap(Session.class).doReturningWork(
+					connection -> "PostgreSQL".equals(connection.getMetaData().getDatabaseProductName()));
+			postgres = result;
+		}
+		return result;
+	}
+
+}
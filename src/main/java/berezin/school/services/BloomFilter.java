@@ -0,0 +1,123 @@
+package berezin.school.services;
+/**
+ * Класс BloomFilter - фильтр Блума для строк
+ * Битовый массив из m бит и k хэш-функций: строка добавляется установкой k бит,
+ * проверка отвечает "нет" только для строки, которая точно не добавлялась.
+ * Ложноположительные ответы возможны с вероятностью falsePositiveRate, пока количество
+ * добавленных строк не больше capacity; ложноотрицательных ответов нет.
+ * Удаление строк не поддерживается. Добавление и проверка потокобезопасны без блокировок
+ */
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+final class BloomFilter {
+
+	/** Биты фильтра, по 64 в элементе массива */
+	private final AtomicLongArray bits;
+
+	private final long bitCount;
+
+	private final int hashCount;
+
+	private final long capacity;
+
+	/** Количество добавлений (повторно добавленная строка учитывается повторно) */
+	private final LongAdder added = new LongAdder();
+
+	/**
+	 * Конструктор
+	 *
+	 * @param capacity ожидаемое количество строк
+	 * @param falsePositiveRate доля ложноположительных ответов при capacity строк (0..1)
+	 */
+	BloomFilter(long capacity, double falsePositiveRate) {
+
+		this.capacity = Math.max(1, capacity);
+		long optimalBits = (long) Math.ceil(-this.capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+		long words = Math.max(1, (optimalBits + 63) / 64);
+		this.bits = new AtomicLongArray(Math.toIntExact(words));
+		this.bitCount = words * 64;
+		this.hashCount = Math.max(1, (int) Math.round((double) bitCount / this.capacity * Math.log(2)));
+	}
+
+	/** Добавление строки */
+	void put(String value) {
+
+		long hash = hash(value);
+		long step = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+		for (int i = 0; i < hashCount; i++) {
+			long index = Math.floorMod(hash + i * step, bitCount);
+			int word = (int) (index >>> 6);
+			long mask = 1L << index;
+			long current;
+			while (((current = bits.get(word)) & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+				/** бит установлен другим потоком - повтор чтения */
+			}
+		}
+		added.increment();
+	}
+
+	/**
+	 * Проверка строки
+	 *
+	 * @param value строка
+	 * @return false - строка точно не добавлялась; true - строка, вероятно, добавлялась
+	 */
+	boolean mightContain(String value) {
+
+		long hash = hash(value);
+		long step = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+		for (int i = 0; i < hashCount; i++) {
+			long index = Math.floorMod(hash + i * step, bitCount);
+			if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Ожидаемая доля ложноположительных ответов при текущем количестве добавлений */
+	double expectedFalsePositiveRate() {
+		return Math.pow(1 - Math.exp(-hashCount * (double) added() / bitCount), hashCount);
+	}
+
+	long added() {
+		return added.sum();
+	}
+
+	long capacity() {
+		return capacity;
+	}
+
+	long bitCount() {
+		return bitCount;
+	}
+
+	int hashCount() {
+		return hashCount;
+	}
+
+	/** 64-битный хэш строки: FNV-1a по символам и перемешивание битов */
+	private static long hash(String value) {
+
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < value.length(); i++) {
+			hash ^= value.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return mix(hash);
+	}
+
+	/** Перемешивание битов (финализатор MurmurHash3) */
+	private static long mix(long hash) {
+
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb3fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+}
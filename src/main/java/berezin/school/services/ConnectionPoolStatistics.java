@@ -0,0 +1,102 @@
+package berezin.school.services;
+/**
+ * Класс ConnectionPoolStatistics - статистика пула соединений БД (HikariCP)
+ * Соединения пула по состояниям, время получения соединения (перцентили),
+ * время использования соединения, количество созданных соединений и таймаутов получения.
+ * Статистика основной БД и реплик (replicas)
+ */
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import berezin.school.config.ReadWriteRoutingDataSource;
+
+@Component
+public class ConnectionPoolStatistics {
+
+	@Autowired
+	private ReadWriteRoutingDataSource dataSource;
+
+	@Autowired
+	private MetricRegistry metricRegistry;
+
+	/**
+	 * Статистика пула соединений
+	 *
+	 * @return размер пула, соединения (активные, свободные, всего), ожидающие потоки,
+	 *         время получения соединения и использования (мс), созданные соединения, таймауты;
+	 *         то же для пулов реплик (replicas)
+	 */
+	public Map<String, Object> statistics() {
+
+		Map<String, Object> result = statistics(dataSource.getPrimary());
+		List<HikariDataSource> replicas = dataSource.getReplicas();
+		if (!replicas.isEmpty()) {
+			result.put("replicas", replicas.stream().map(this::statistics).collect(Collectors.toList()));
+		}
+		return result;
+	}
+
+	/** Статистика пула соединений dataSource */
+	private Map<String, Object> statistics(HikariDataSource dataSource) {
+
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("pool", dataSource.getPoolName());
+		result.put("maximumPoolSize", dataSource.getMaximumPoolSize());
+		result.put("minimumIdle", dataSource.getMinimumIdle());
+		HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+		if (pool != null) {
+			result.put("active", pool.getActiveConnections());
+			result.put("idle", pool.getIdleConnections());
+			result.put("total", pool.getTotalConnections());
+			result.put("pending", pool.getThreadsAwaitingConnection());
+		}
+
+		String prefix = dataSource.getPoolName() + ".pool.";
+		Timer wait = metricRegistry.getTimers().get(prefix + "Wait");
+		if (wait != null) {
+			Map<String, Object> acquire = snapshot(wait.getSnapshot(), TimeUnit.MILLISECONDS.toNanos(1));
+			acquire.put("count", wait.getCount());
+			acquire.put("ratePerSecond", wait.getOneMinuteRate());
+			result.put("acquireMillis", acquire);
+		}
+		Histogram usage = metricRegistry.getHistograms().get(prefix + "Usage");
+		if (usage != null) {
+			result.put("usageMillis", snapshot(usage.getSnapshot(), 1));
+		}
+		Histogram creation = metricRegistry.getHistograms().get(prefix + "ConnectionCreation");
+		if (creation != null) {
+			result.put("connectionsCreated", creation.getCount());
+			result.put("connectionCreationMillis", snapshot(creation.getSnapshot(), 1));
+		}
+		Meter timeouts = metricRegistry.getMeters().get(prefix + "ConnectionTimeoutRate");
+		if (timeouts != null) {
+			result.put("acquireTimeouts", timeouts.getCount());
+		}
+		return result;
+	}
+
+	/** Перцентили распределения в мс (scale - единиц распределения в 1 мс) */
+	private static Map<String, Object> snapshot(Snapshot snapshot, double scale) {
+
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("mean", snapshot.getMean() / scale);
+		result.put("p50", snapshot.getMedian() / scale);
+		result.put("p95", snapshot.get95thPercentile() / scale);
+		result.put("p99", snapshot.get99thPercentile() / scale);
+		result.put("max", snapshot.getMax() / scale);
+		return result;
+	}
+
+}
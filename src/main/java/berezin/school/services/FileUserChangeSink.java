@@ -0,0 +1,66 @@
+package berezin.school.services;
+/**
+ * Класс FileUserChangeSink - доставка журнала изменений пользователей в локальный файл
+ * (school.user-outbox.sink=file): каждая запись - строка JSON, пакет дописывается в конец
+ * файла school.user-outbox.file одной записью и сбрасывается на диск до сохранения позиции доставки.
+ * Пакет, записанный не полностью при сбое, дописывается повторно
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import berezin.school.events.UserChange;
+
+@Component
+@ConditionalOnProperty(name = "school.user-outbox.sink", havingValue = "file", matchIfMissing = true)
+public class FileUserChangeSink implements UserChangeSink {
+
+	/** Файл журнала */
+	private final Path file;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	/** Конструктор */
+	public FileUserChangeSink(@Value("${school.user-outbox.file:user-changes.jsonl}") String file) {
+		this.file = Paths.get(file).toAbsolutePath();
+	}
+
+	@Override
+	public String name() {
+		return "file:" + file;
+	}
+
+	@Override
+	public void deliver(List<UserChange> changes) throws IOException {
+
+		ByteArrayOutputStream lines = new ByteArrayOutputStream();
+		for (UserChange change : changes) {
+			objectMapper.writeValue(lines, change);
+			lines.write('\n');
+		}
+		if (file.getParent() != null) {
+			Files.createDirectories(file.getParent());
+		}
+		try (FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			ByteBuffer buffer = ByteBuffer.wrap(lines.toByteArray());
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(false);
+		}
+	}
+
+}
@@ -0,0 +1,54 @@
+package berezin.school.services;
+/**
+ * Класс HibernateCacheStatistics - статистика кэша второго уровня и кэша запросов Hibernate
+ * Требует hibernate.generate_statistics=true
+ */
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+@Component
+public class HibernateCacheStatistics {
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	/**
+	 * Статистика кэшей Hibernate
+	 *
+	 * @return попадания, промахи и записи кэша второго уровня и кэша запросов,
+	 *         размер и попадания по регионам
+	 */
+	public Map<String, Object> statistics() {
+
+		Statistics stats = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("enabled", stats.isStatisticsEnabled());
+		result.put("secondLevelCacheHits", stats.getSecondLevelCacheHitCount());
+		result.put("secondLevelCacheMisses", stats.getSecondLevelCacheMissCount());
+		result.put("secondLevelCachePuts", stats.getSecondLevelCachePutCount());
+		result.put("queryCacheHits", stats.getQueryCacheHitCount());
+		result.put("queryCacheMisses", stats.getQueryCacheMissCount());
+		result.put("queryCachePuts", stats.getQueryCachePutCount());
+
+		Map<String, Object> regions = new LinkedHashMap<>();
+		for (String name : stats.getSecondLevelCacheRegionNames()) {
+			SecondLevelCacheStatistics region = stats.getSecondLevelCacheStatistics(name);
+			Map<String, Object> regionStats = new LinkedHashMap<>();
+			regionStats.put("elementsInMemory", region.getElementCountInMemory());
+			regionStats.put("hits", region.getHitCount());
+			regionStats.put("misses", region.getMissCount());
+			regionStats.put("puts", region.getPutCount());
+			regions.put(name, regionStats);
+		}
+		result.put("regions", regions);
+		return result;
+	}
+
+}
@@ -0,0 +1,83 @@
+package berezin.school.services;
+/**
+ * Класс HttpUserChangeSink - доставка журнала изменений пользователей внешней системе
+ * (school.user-outbox.sink=http): пакет отправляется POST запросом на school.user-outbox.http.url,
+ * тело - {"changes": [запись, ...]}. Пакет доставлен, если получен ответ 2xx; другой ответ,
+ * ошибка соединения или тайм-аут - пакет отправляется повторно
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import berezin.school.events.UserChange;
+
+@Component
+@ConditionalOnProperty(name = "school.user-outbox.sink", havingValue = "http")
+public class HttpUserChangeSink implements UserChangeSink {
+
+	private final URL url;
+
+	/** Тайм-аут соединения и ответа, мс */
+	private final int timeoutMillis;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	/**
+	 * Конструктор
+	 *
+	 * @param url адрес получателя
+	 * @param timeoutMillis тайм-аут соединения и ответа, мс
+	 */
+	public HttpUserChangeSink(@Value("${school.user-outbox.http.url}") URL url,
+			@Value("${school.user-outbox.http.timeout-millis:10000}") int timeoutMillis) {
+
+		this.url = url;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	@Override
+	public String name() {
+		return "http:" + url;
+	}
+
+	@Override
+	public void deliver(List<UserChange> changes) throws IOException {
+
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setConnectTimeout(timeoutMillis);
+		connection.setReadTimeout(timeoutMillis);
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		connection.setRequestProperty("Content-Type", MediaType.APPLICATION_JSON_UTF8_VALUE);
+		try (OutputStream body = connection.getOutputStream()) {
+			objectMapper.writeValue(body, Collections.singletonMap("changes", changes));
+		} catch (IOException e) {
+			connection.disconnect();
+			throw e;
+		}
+		int status = connection.getResponseCode();
+		if (status / 100 != 2) {
+			connection.disconnect();
+			throw new IOException("Получатель " + url + " ответил статусом " + status);
+		}
+		/** Ответ дочитывается: соединение используется повторно (keep-alive) */
+		try (InputStream response = connection.getInputStream()) {
+			byte[] buffer = new byte[4096];
+			while (response.read(buffer) >= 0) {
+				continue;
+			}
+		}
+	}
+
+}
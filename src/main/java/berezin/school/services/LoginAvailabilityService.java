@@ -0,0 +1,255 @@
+package berezin.school.services;
+/**
+ * Класс LoginAvailabilityService - проверка, свободен ли логин (форма регистрации)
+ * Логины всех пользователей хранятся в памяти фильтром Блума (около 10 бит на логин
+ * при доле ложноположительных ответов 1%): логин, отсутствующий в фильтре, точно свободен
+ * и проверяется без обращения к БД; логин, который может быть занят, проверяется в БД.
+ * Фильтр строится после запуска приложения потоковым чтением логинов с основной БД
+ * (до построения все проверки выполняются в БД) и пополняется по событиям добавления
+ * пользователей. Удаленные логины из фильтра не удаляются (остаются ложноположительными):
+ * фильтр перестраивается в пуле dbExecutor, когда удалений становится больше
+ * school.login-filter.max-deleted-ratio от количества логинов или логинов - больше
+ * емкости фильтра
+ */
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import berezin.school.config.InstrumentedExecutor;
+import berezin.school.config.ReplicaRouting;
+import berezin.school.events.UserChangedEvent;
+import berezin.school.events.UsersImportedEvent;
+import berezin.school.repositories.UserRepository;
+
+@Service
+public class LoginAvailabilityService {
+
+	/** Минимальная емкость фильтра (количество логинов) */
+	@Value("${school.login-filter.min-capacity:10000}")
+	private long minCapacity;
+
+	/** Доля ложноположительных ответов фильтра при заполнении до емкости */
+	@Value("${school.login-filter.false-positive-rate:0.01}")
+	private double falsePositiveRate;
+
+	/** Доля удаленных логинов, при которой фильтр перестраивается */
+	@Value("${school.login-filter.max-deleted-ratio:0.1}")
+	private double maxDeletedRatio;
+
+	@Autowired
+	private UserRepository users;
+
+	/** Пул перестроения фильтра */
+	@Autowired
+	@Qualifier("dbExecutor")
+	private InstrumentedExecutor dbExecutor;
+
+	private final TransactionTemplate readOnly;
+
+	/** Текущий фильтр, null - фильтр еще не построен */
+	private volatile BloomFilter filter;
+
+	/** Строящийся фильтр: получает логины, добавленные во время построения */
+	private volatile BloomFilter building;
+
+	private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+	/** Удалений с момента построения текущего фильтра */
+	private final LongAdder deleted = new LongAdder();
+
+	private final LongAdder checks = new LongAdder();
+
+	/** Ответы фильтра "логин свободен" (без обращения к БД) */
+	private final LongAdder definitelyFree = new LongAdder();
+
+	private final LongAdder dbChecks = new LongAdder();
+
+	/** Проверки в БД, показавшие, что логин, найденный фильтром, свободен */
+	private final LongAdder falsePositives = new LongAdder();
+
+	private final LongAdder builds = new LongAdder();
+
+	private final AtomicLong lastBuildMillis = new AtomicLong();
+
+	/** Конструктор */
+	@Autowired
+	public LoginAvailabilityService(PlatformTransactionManager transactionManager) {
+
+		this.readOnly = new TransactionTemplate(transactionManager);
+		this.readOnly.setReadOnly(true);
+	}
+
+	/** Построение фильтра после запуска приложения */
+	@EventListener(ApplicationReadyEvent.class)
+	public void onApplicationReady() {
+		scheduleRebuild();
+	}
+
+	/**
+	 * Проверка логина фильтром, без обращения к БД
+	 *
+	 * @param login логин
+	 * @return false - логин точно свободен; true - логин может быть занят (проверка isTaken)
+	 */
+	public boolean mightBeTaken(String login) {
+
+		checks.increment();
+		BloomFilter current = filter;
+		if (current != null && !current.mightContain(login)) {
+			definitelyFree.increment();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Проверка логина в основной БД (логин, который может быть занят по mightBeTaken)
+	 *
+	 * @param login логин
+	 * @return true - логин занят
+	 */
+	public boolean isTaken(String login) {
+
+		dbChecks.increment();
+		boolean taken = ReplicaRouting.onPrimary(() -> users.countByLogin(login) > 0);
+		if (!taken && filter != null) {
+			falsePositives.increment();
+		}
+		return taken;
+	}
+
+	/**
+	 * Добавление и удаление логинов. Фильтр изменяется при публикации события, до фиксации
+	 * транзакции: логин отмененной транзакции остается в фильтре ложноположительным
+	 */
+	@EventListener
+	public void onUserChanged(UserChangedEvent event) {
+
+		if (event.getType() == UserChangedEvent.Type.CREATED) {
+			add(event.getLogin());
+		} else if (event.getType() == UserChangedEvent.Type.DELETED) {
+			deleted.increment();
+		}
+		rebuildIfStale();
+	}
+
+	/** Добавление логинов пакета импорта */
+	@EventListener
+	public void onUsersImported(UsersImportedEvent event) {
+
+		event.getLogins().forEach(this::add);
+		rebuildIfStale();
+	}
+
+	/**
+	 * Добавление логина в текущий и строящийся фильтры. Строящийся фильтр читается первым:
+	 * построение заменяет текущий фильтр до сброса строящегося, поэтому логин
+	 * не может попасть только в заменяемый фильтр
+	 */
+	private void add(String login) {
+
+		BloomFilter next = building;
+		BloomFilter current = filter;
+		if (next != null) {
+			next.put(login);
+		}
+		if (current != null && current != next) {
+			current.put(login);
+		}
+	}
+
+	/** Перестроение фильтра при переполнении или большом количестве удалений */
+	private void rebuildIfStale() {
+
+		BloomFilter current = filter;
+		if (current != null && (current.added() > current.capacity()
+				|| deleted.sum() > current.added() * maxDeletedRatio)) {
+			scheduleRebuild();
+		}
+	}
+
+	/** Запуск перестроения в пуле dbExecutor. Если пул перегружен - при следующем изменении */
+	private void scheduleRebuild() {
+
+		if (rebuilding.get()) {
+			return;
+		}
+		try {
+			dbExecutor.execute(this::rebuild);
+		} catch (TaskRejectedException e) {
+			/** пул перегружен, фильтр перестраивается при следующем изменении логинов */
+		}
+	}
+
+	/**
+	 * Построение фильтра: количество логинов, затем потоковое чтение логинов (основная БД).
+	 * Емкость - удвоенное количество логинов, чтобы фильтр не перестраивался при росте
+	 */
+	private void rebuild() {
+
+		if (!rebuilding.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			long start = System.currentTimeMillis();
+			long count = ReplicaRouting.onPrimary(() -> users.count());
+			BloomFilter next = new BloomFilter(Math.max(minCapacity, count * 2), falsePositiveRate);
+			building = next;
+			deleted.reset();
+			ReplicaRouting.onPrimary(() -> readOnly.execute(status -> {
+				try (Stream<String> logins = users.streamAllLogins()) {
+					logins.forEach(next::put);
+				}
+				return null;
+			}));
+			filter = next;
+			builds.increment();
+			lastBuildMillis.set(System.currentTimeMillis() - start);
+		} finally {
+			building = null;
+			rebuilding.set(false);
+		}
+	}
+	/** конец rebuild() */
+
+	/**
+	 * Статистика фильтра и проверок
+	 *
+	 * @return размер фильтра, ожидаемая доля ложноположительных ответов, количество проверок
+	 *         (без обращения к БД, в БД, ложноположительных), перестроений
+	 */
+	public Map<String, Object> statistics() {
+
+		BloomFilter current = filter;
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("ready", current != null);
+		if (current != null) {
+			result.put("capacity", current.capacity());
+			result.put("logins", current.added());
+			result.put("bits", current.bitCount());
+			result.put("hashFunctions", current.hashCount());
+			result.put("expectedFalsePositiveRate", current.expectedFalsePositiveRate());
+		}
+		result.put("deletedSinceBuild", deleted.sum());
+		result.put("checks", checks.sum());
+		result.put("definitelyFree", definitelyFree.sum());
+		result.put("dbChecks", dbChecks.sum());
+		result.put("falsePositives", falsePositives.sum());
+		result.put("builds", builds.sum());
+		result.put("lastBuildMillis", lastBuildMillis.get());
+		return result;
+	}
+
+}
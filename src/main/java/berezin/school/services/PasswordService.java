@@ -0,0 +1,126 @@
+package berezin.school.services;
+/**
+ * Класс PasswordService - хранение и проверка паролей пользователей
+ * В БД хранится хэш пароля (PasswordEncoder, PasswordConfig). Пароли, сохраненные 
+ * до перехода на хэширование (открытый текст, не длиннее LEGACY_MAX_LENGTH символов),
+ * проверяются сравнением и заменяются хэшем при первом успешном входе (только столбец password,
+ * версия записи не изменяется).
+ * Проверка выполняется в пуле passwordExecutor, результат - CompletableFuture
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import berezin.school.config.ReplicaRouting;
+import berezin.school.repositories.UserRepository;
+import berezin.school.user.User;
+
+@Service
+public class PasswordService {
+
+	/** Максимальная длина пароля в открытом тексте (прежний размер столбца password) */
+	private static final int LEGACY_MAX_LENGTH = 10;
+
+	private final PasswordEncoder encoder;
+
+	private final ThreadPoolTaskExecutor executor;
+
+	@Autowired
+	private UserRepository users;
+
+	/**
+	 * Хэш для проверки при отсутствии пользователя: время ответа не зависит
+	 * от существования логина
+	 */
+	private final String absentUserHash;
+
+	@Autowired
+	public PasswordService(PasswordEncoder encoder, @Qualifier("passwordExecutor") ThreadPoolTaskExecutor executor) {
+		this.encoder = encoder;
+		this.executor = executor;
+		this.absentUserHash = encoder.encode("absent-user");
+	}
+
+	/**
+	 * Хэш пароля для сохранения в БД
+	 *
+	 * @param password пароль
+	 * @return хэш пароля
+	 */
+	public String hash(String password) {
+		return encoder.encode(password);
+	}
+
+	/**
+	 * Асинхронное вычисление хэша пароля в пуле passwordExecutor
+	 *
+	 * @param password пароль
+	 * @return хэш пароля; если очередь пула заполнена, завершается исключением TaskRejectedException
+	 */
+	public CompletableFuture<String> hashAsync(String password) {
+
+		return submit(() -> hash(password));
+	}
+	/** конец hashAsync() */
+
+	/**
+	 * Асинхронная аутентификация: поиск пользователя и проверка пароля в пуле passwordExecutor
+	 * Пароль в открытом тексте при успешной проверке заменяется хэшем
+	 *
+	 * @param login логин
+	 * @param password пароль
+	 * @return пользователь (null - неверный логин/пароль); если очередь пула заполнена,
+	 *         завершается исключением TaskRejectedException
+	 */
+	public CompletableFuture<User> authenticate(String login, String password) {
+
+		return submit(() -> verify(login, password));
+	}
+	/** конец authenticate() */
+
+	/** Выполнение задачи в пуле passwordExecutor, отклонение задачи - исключение результата */
+	private <T> CompletableFuture<T> submit(Supplier<T> task) {
+
+		try {
+			return CompletableFuture.supplyAsync(task, executor);
+		} catch (TaskRejectedException e) {
+			CompletableFuture<T> rejected = new CompletableFuture<>();
+			rejected.completeExceptionally(e);
+			return rejected;
+		}
+	}
+
+	/**
+	 * Проверка пароля пользователя (выполняется в пуле). Пользователь читается с основной БД:
+	 * реплика после смены пароля может вернуть прежний хэш
+	 */
+	private User verify(String login, String password) {
+
+		User user = ReplicaRouting.onPrimary(() -> users.findByLogin(login));
+		if (user == null) {
+			encoder.matches(password, absentUserHash);
+			return null;
+		}
+
+		String stored = user.getPassword();
+		if (stored.length() > LEGACY_MAX_LENGTH) {
+			return encoder.matches(password, stored) ? user : null;
+		}
+
+		/** Пароль в открытом тексте: сравнение за постоянное время и замена хэшем */
+		if (!MessageDigest.isEqual(stored.getBytes(StandardCharsets.UTF_8), password.getBytes(StandardCharsets.UTF_8))) {
+			return null;
+		}
+		users.replaceLegacyPassword(login, stored, hash(password));
+		return user;
+	}
+	/** конец verify() */
+
+}
@@ -0,0 +1,121 @@
+package berezin.school.services;
+/**
+ * Класс UserApiService - JSON представление пользователей для API (ApiController)
+ * Страница списка читается курсором БД в транзакции только для чтения и записывается
+ * потоковым генератором Jackson по мере чтения, без построения списка объектов и без
+ * промежуточного буфера ответа. Данные выбираются проекцией: в списке - UserSummary
+ * (без password, adress, info), в профиле пользователя - все поля, кроме пароля
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import berezin.school.repositories.UserRepository;
+import berezin.school.user.User;
+import berezin.school.user.UserSummary;
+
+@Service
+public class UserApiService {
+
+	/** Формат даты рождения (ISO, как в формах) */
+	private static final String DATE_FORMAT = "yyyy-MM-dd";
+
+	@Autowired
+	private UserRepository users;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	/**
+	 * Запись страницы пользователей (кроме администратора) после указанного id:
+	 * {"users": [{id, login, name, surName, birthDate, version}, ...], "size": n,
+	 * "hasNext": true|false, "nextAfter": id последнего пользователя или null}
+	 * Запрашивается на одну запись больше размера страницы, чтобы определить
+	 * наличие следующей страницы без COUNT запроса
+	 *
+	 * @param after id последнего пользователя предыдущей страницы (0 - первая страница)
+	 * @param pageSize размер страницы
+	 * @param out выходной поток (не закрывается)
+	 * @throws IOException ошибка записи
+	 */
+	@Transactional(readOnly = true)
+	public void writePage(int after, int pageSize, OutputStream out) throws IOException {
+
+		SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT);
+		JsonGenerator generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+		generator.writeStartObject();
+		generator.writeArrayFieldStart("users");
+
+		int written = 0;
+		Integer lastId = null;
+		boolean hasNext = false;
+		try (Stream<UserSummary> stream = users.streamPageAfter(after, new PageRequest(0, pageSize + 1))) {
+			Iterator<UserSummary> page = stream.iterator();
+			while (page.hasNext()) {
+				UserSummary user = page.next();
+				if (written == pageSize) {
+					hasNext = true;
+					break;
+				}
+				generator.writeStartObject();
+				generator.writeNumberField("id", user.getId());
+				generator.writeStringField("login", user.getLogin());
+				generator.writeStringField("name", user.getName());
+				generator.writeStringField("surName", user.getSurName());
+				generator.writeStringField("birthDate",
+						user.getBirthDate() == null ? null : dateFormat.format(user.getBirthDate()));
+				generator.writeNumberField("version", user.getVersion());
+				generator.writeEndObject();
+				lastId = user.getId();
+				written++;
+			}
+		}
+
+		generator.writeEndArray();
+		generator.writeNumberField("size", written);
+		generator.writeBooleanField("hasNext", hasNext);
+		if (hasNext) {
+			generator.writeNumberField("nextAfter", lastId);
+		} else {
+			generator.writeNullField("nextAfter");
+		}
+		generator.writeEndObject();
+		generator.flush();
+	}
+	/** конец writePage() */
+
+	/**
+	 * Профиль пользователя без пароля
+	 *
+	 * @param user пользователь
+	 * @return id, login, name, surName, adress, birthDate, info, version, updatedAt
+	 */
+	public Map<String, Object> profile(User user) {
+
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("id", user.getId());
+		result.put("login", user.getLogin());
+		result.put("name", user.getName());
+		result.put("surName", user.getSurName());
+		result.put("adress", user.getAdress());
+		result.put("birthDate",
+				user.getBirthDate() == null ? null : new SimpleDateFormat(DATE_FORMAT).format(user.getBirthDate()));
+		result.put("info", user.getInfo());
+		result.put("version", user.getVersion());
+		result.put("updatedAt", user.getUpdatedAt());
+		return result;
+	}
+	/** конец profile() */
+
+}
@@ -0,0 +1,227 @@
+package berezin.school.services;
+/**
+ * Класс UserChangeRelay - доставка журнала изменений пользователей (transactional outbox)
+ * внешним системам. Изменения таблицы users записываются в журнал user_changes триггером
+ * в той же транзакции (миграция V8__user_changes_outbox.sql), поэтому зафиксированное
+ * изменение не теряется при сбое приложения, а отмененное не доставляется.
+ * Фоновый поток читает журнал пакетами (school.user-outbox.batch-size) после позиции
+ * доставки, передает пакет получателю (UserChangeSink) и сохраняет позицию только после
+ * доставки: доставка "не менее одного раза", получатели синхронизируются по изменениям,
+ * без чтения всей таблицы users. При ошибке доставка повторяется с увеличением паузы
+ * до school.user-outbox.max-backoff-seconds. Доставленные записи удаляются из журнала
+ * через school.user-outbox.retention-hours. Журнал есть только в PostgreSQL (миграции Flyway)
+ */
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import berezin.school.events.UserChange;
+import berezin.school.repositories.UserChangeRepository;
+import berezin.school.repositories.UserChangeRepository.Checkpoint;
+
+@Component
+public class UserChangeRelay implements DisposableBean {
+
+	/** Доставка включена */
+	private final boolean enabled;
+
+	/** Размер пакета */
+	private final int batchSize;
+
+	/** Пауза между проверками журнала, мс */
+	private final long pollMillis;
+
+	/** Максимальная пауза после ошибки доставки, мс */
+	private final long maxBackoffMillis;
+
+	/** Время хранения доставленных записей, мс */
+	private final long retentionMillis;
+
+	private final ScheduledExecutorService relay;
+
+	@Autowired
+	private UserChangeRepository changes;
+
+	@Autowired
+	private UserChangeSink sink;
+
+	/** Позиция доставки (поток доставки) */
+	private volatile Checkpoint checkpoint;
+
+	/** Пауза после ошибки доставки, мс (поток доставки) */
+	private volatile long backoffMillis;
+
+	/** Время следующего удаления доставленных записей (поток доставки) */
+	private long nextCleanup;
+
+	private volatile boolean running;
+
+	private volatile String lastError;
+
+	private volatile Date lastDelivery;
+
+	private final LongAdder delivered = new LongAdder();
+
+	private final LongAdder batches = new LongAdder();
+
+	private final LongAdder failures = new LongAdder();
+
+	private final LongAdder cleaned = new LongAdder();
+
+	/**
+	 * Конструктор
+	 *
+	 * @param enabled доставка включена
+	 * @param batchSize размер пакета
+	 * @param pollMillis пауза между проверками журнала, мс
+	 * @param maxBackoffSeconds максимальная пауза после ошибки доставки, с
+	 * @param retentionHours время хранения доставленных записей, ч
+	 */
+	public UserChangeRelay(
+			@Value("${school.user-outbox.enabled:true}") boolean enabled,
+			@Value("${school.user-outbox.batch-size:500}") int batchSize,
+			@Value("${school.user-outbox.poll-millis:1000}") long pollMillis,
+			@Value("${school.user-outbox.max-backoff-seconds:60}") long maxBackoffSeconds,
+			@Value("${school.user-outbox.retention-hours:168}") long retentionHours) {
+
+		this.enabled = enabled;
+		this.batchSize = batchSize;
+		this.pollMillis = pollMillis;
+		this.maxBackoffMillis = TimeUnit.SECONDS.toMillis(maxBackoffSeconds);
+		this.retentionMillis = TimeUnit.HOURS.toMillis(retentionHours);
+		this.relay = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "user-outbox-relay");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/** Запуск доставки после запуска приложения (миграции выполнены) */
+	@EventListener(ApplicationReadyEvent.class)
+	public void onApplicationReady() {
+
+		if (enabled) {
+			relay.execute(this::start);
+		}
+	}
+
+	/** Чтение позиции доставки; без журнала (схема Hibernate) доставка не запускается */
+	private void start() {
+
+		try {
+			if (!changes.isAvailable()) {
+				lastError = "Журнал изменений user_changes отсутствует";
+				return;
+			}
+			checkpoint = changes.findCheckpoint(sink.name());
+			running = true;
+			relay.execute(this::poll);
+		} catch (RuntimeException e) {
+			fail(e);
+			relay.schedule(this::start, backoffMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+	/** конец start() */
+
+	/**
+	 * Доставка журнала пакетами до конца прочитанных записей, затем пауза pollMillis.
+	 * Позиция сохраняется после доставки пакета: при сбое между доставкой и сохранением
+	 * пакет доставляется повторно
+	 */
+	private void poll() {
+
+		long delay = pollMillis;
+		try {
+			List<UserChange> batch;
+			do {
+				batch = changes.findCommittedAfter(checkpoint, batchSize);
+				if (batch.isEmpty()) {
+					break;
+				}
+				sink.deliver(batch);
+				UserChange last = batch.get(batch.size() - 1);
+				Checkpoint next = new Checkpoint(last.getTxid(), last.getId());
+				changes.saveCheckpoint(sink.name(), next);
+				checkpoint = next;
+				delivered.add(batch.size());
+				batches.increment();
+				lastDelivery = new Date();
+			} while (batch.size() == batchSize && !relay.isShutdown());
+			backoffMillis = 0;
+			cleanup();
+		} catch (Exception e) {
+			fail(e);
+			delay = backoffMillis;
+		}
+		if (!relay.isShutdown()) {
+			relay.schedule(this::poll, delay, TimeUnit.MILLISECONDS);
+		}
+	}
+	/** конец poll() */
+
+	/** Удаление доставленных записей старше retentionMillis, не чаще раза в час */
+	private void cleanup() {
+
+		long now = System.currentTimeMillis();
+		if (now >= nextCleanup) {
+			nextCleanup = now + TimeUnit.HOURS.toMillis(1);
+			cleaned.add(changes.deleteDelivered(new Date(now - retentionMillis)));
+		}
+	}
+
+	/** Ошибка доставки: пауза удваивается от pollMillis до maxBackoffMillis */
+	private void fail(Exception e) {
+
+		failures.increment();
+		lastError = e.toString();
+		backoffMillis = Math.min(maxBackoffMillis, Math.max(pollMillis, backoffMillis * 2));
+	}
+
+	/**
+	 * Статистика доставки
+	 *
+	 * @return получатель, состояние, позиция доставки, недоставленные записи, доставленные записи
+	 *         и пакеты, ошибки и последняя ошибка, удаленные из журнала записи
+	 */
+	public Map<String, Object> statistics() {
+
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("sink", sink.name());
+		result.put("enabled", enabled);
+		result.put("running", running);
+		Checkpoint current = checkpoint;
+		if (current != null) {
+			result.put("lastDeliveredId", current.getId());
+			result.put("pending", changes.countAfter(current));
+		}
+		result.put("delivered", delivered.sum());
+		result.put("batches", batches.sum());
+		result.put("lastDelivery", lastDelivery);
+		result.put("failures", failures.sum());
+		result.put("lastError", lastError);
+		result.put("backoffMillis", backoffMillis);
+		result.put("cleaned", cleaned.sum());
+		return result;
+	}
+	/** конец statistics() */
+
+	/** Остановка доставки: текущий пакет не подтверждается и будет доставлен повторно */
+	@Override
+	public void destroy() {
+
+		running = false;
+		relay.shutdownNow();
+	}
+
+}
@@ -0,0 +1,31 @@
+package berezin.school.services;
+/**
+ * Интерфейс UserChangeSink - получатель журнала изменений пользователей (UserChangeRelay).
+ * Реализация выбирается параметром school.user-outbox.sink: file - файл JSON строк
+ * (FileUserChangeSink), http - POST запрос внешней системе (HttpUserChangeSink).
+ * Доставка "не менее одного раза": пакет, доставленный до сбоя сохранения позиции,
+ * доставляется повторно, получатель пропускает записи с уже полученными id
+ */
+
+import java.io.IOException;
+import java.util.List;
+import berezin.school.events.UserChange;
+
+public interface UserChangeSink {
+
+	/**
+	 * Имя получателя (позиция доставки в таблице user_changes_checkpoints)
+	 *
+	 * @return имя получателя
+	 */
+	String name();
+
+	/**
+	 * Доставка пакета записей журнала. Метод завершается после того, как получатель
+	 * сохранил пакет; исключение - пакет не доставлен и будет доставлен повторно
+	 *
+	 * @param changes записи журнала в порядке чтения
+	 * @throws IOException ошибка доставки
+	 */
+	void deliver(List<UserChange> changes) throws IOException;
+}
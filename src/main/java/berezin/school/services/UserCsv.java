@@ -0,0 +1,150 @@
+package berezin.school.services;
+/**
+ * Класс UserCsv - формат CSV файлов пользователей (импорт и экспорт)
+ * Столбцы: login,password,name,surname,adress,birth_date,info
+ * Разделитель - запятая, значения с запятой, кавычками или переводом строки
+ * заключаются в двойные кавычки (RFC 4180). Дата - в формате yyyy-MM-dd
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import berezin.school.user.User;
+
+public final class UserCsv {
+
+	/** Заголовок файла (первая строка) */
+	public static final String HEADER = "login,password,name,surname,adress,birth_date,info";
+
+	/** Количество столбцов */
+	private static final int COLUMNS = 7;
+
+	/** Формат даты рождения */
+	private static final String DATE_PATTERN = "yyyy-MM-dd";
+
+	private UserCsv() {
+	}
+
+	/**
+	 * Чтение одной записи CSV. Запись может занимать несколько строк,
+	 * если значение в кавычках содержит перевод строки
+	 *
+	 * @param reader источник данных
+	 * @return значения столбцов записи, null - конец файла
+	 * @throws IOException ошибка чтения
+	 */
+	public static List<String> readRecord(BufferedReader reader) throws IOException {
+
+		String line = reader.readLine();
+		if (line == null) {
+			return null;
+		}
+
+		List<String> values = new ArrayList<>(COLUMNS);
+		StringBuilder value = new StringBuilder();
+		boolean quoted = false;
+		while (true) {
+			for (int i = 0; i < line.length(); i++) {
+				char c = line.charAt(i);
+				if (quoted) {
+					if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+						value.append('"');
+						i++;
+					} else if (c == '"') {
+						quoted = false;
+					} else {
+						value.append(c);
+					}
+				} else if (c == '"') {
+					quoted = true;
+				} else if (c == ',') {
+					values.add(value.toString());
+					value.setLength(0);
+				} else {
+					value.append(c);
+				}
+			}
+
+			/** Незакрытая кавычка - значение продолжается на следующей строке */
+			String next = quoted ? reader.readLine() : null;
+			if (next == null) {
+				break;
+			}
+			value.append('\n');
+			line = next;
+		}
+		values.add(value.toString());
+		return values;
+	}
+	/** конец readRecord() */
+
+	/**
+	 * Заполнение пользователя по значениям записи CSV. Пустые значения - null
+	 *
+	 * @param values значения столбцов в порядке HEADER
+	 * @return пользователь (без id)
+	 * @throws IllegalArgumentException если количество столбцов или дата некорректны
+	 */
+	public static User toUser(List<String> values) {
+
+		if (values.size() != COLUMNS) {
+			throw new IllegalArgumentException("Ожидается " + COLUMNS + " столбцов, получено " + values.size());
+		}
+
+		User user = new User();
+		user.setLogin(emptyToNull(values.get(0)));
+		user.setPassword(emptyToNull(values.get(1)));
+		user.setName(emptyToNull(values.get(2)));
+		user.setSurName(emptyToNull(values.get(3)));
+		user.setAdress(emptyToNull(values.get(4)));
+		user.setBirthDate(parseDate(emptyToNull(values.get(5))));
+		user.setInfo(emptyToNull(values.get(6)));
+		return user;
+	}
+	/** конец toUser() */
+
+	/**
+	 * Форматирование значения для записи в CSV (экранирование кавычками при необходимости)
+	 *
+	 * @param value значение, null - пустое значение
+	 * @return значение столбца CSV
+	 */
+	public static String escape(Object value) {
+
+		if (value == null) {
+			return "";
+		}
+		String text = value instanceof Date ? new SimpleDateFormat(DATE_PATTERN).format((Date) value) : value.toString();
+		if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+			return text;
+		}
+		return '"' + text.replace("\"", "\"\"") + '"';
+	}
+	/** конец escape() */
+
+	/** Разбор даты рождения, null - дата не указана */
+	private static Date parseDate(String value) {
+
+		if (value == null) {
+			return null;
+		}
+		SimpleDateFormat format = new SimpleDateFormat(DATE_PATTERN);
+		format.setLenient(false);
+		try {
+			return format.parse(value);
+		} catch (ParseException e) {
+			throw new IllegalArgumentException("Некорректная дата рождения " + value + ", ожидается " + DATE_PATTERN);
+		}
+	}
+
+	/** Пустая строка - null */
+	private static String emptyToNull(String value) {
+
+		return value == null || value.isEmpty() ? null : value;
+	}
+
+}
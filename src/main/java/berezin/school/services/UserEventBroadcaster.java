@@ -0,0 +1,416 @@
+package berezin.school.services;
+/**
+ * Класс UserEventBroadcaster - рассылка изменений пользователей подписчикам (server-sent events)
+ * Администратор открывает список пользователей одним запросом к БД и далее получает только
+ * изменения: created/updated - строка списка (HTML ячеек из кэша строк UserRowCache),
+ * deleted - логин удаленного пользователя.
+ * Событие формируется один раз для всех подписчиков после фиксации транзакции (один запрос
+ * кратких данных к основной БД на изменение или пакет импорта) в пуле eventExecutor, поток
+ * записи в БД не ожидает рассылки. У каждого подписчика своя ограниченная очередь событий
+ * (school.user-events.buffer-size): событие добавляется без блокировки, очередь отправляется
+ * клиенту задачей пула eventSenderExecutor. Если очередь подписчика заполнена (клиент не успевает
+ * читать), подписчик отключается: ему отправляется событие reload (список устарел), соединение
+ * закрывается. Периодический комментарий heartbeat обнаруживает закрытые соединения.
+ * Запись клиенту блокирующая, поэтому очередь каждого подписчика отправляет свой поток пула
+ * eventSenderExecutor (school.user-events.max-senders): клиент, переставший читать, занимает
+ * только свой поток, формирование событий (eventExecutor) и отправка остальным подписчикам
+ * не ожидают его. Запись дольше school.user-events.write-timeout-millis - подписчик отключается
+ * как медленный (новые события ему не добавляются), поток освобождается при ошибке записи
+ * (тайм-аут соединения). Если все потоки отправки заняты, новый отправляющий подписчик отключается.
+ * Соединения подписчика закрываются при завершении его сессии (выход, удаление, истечение
+ * времени сессии): клиент переподключается и получает статус 403
+ */
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import javax.servlet.http.HttpSessionEvent;
+import javax.servlet.http.HttpSessionListener;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import berezin.school.config.InstrumentedExecutor;
+import berezin.school.config.ReplicaRouting;
+import berezin.school.events.UserChangedEvent;
+import berezin.school.events.UsersImportedEvent;
+import berezin.school.repositories.UserRepository;
+import berezin.school.user.UserSummary;
+
+@Component
+public class UserEventBroadcaster implements HttpSessionListener, DisposableBean {
+
+	/** Логин администратора (не входит в список пользователей) */
+	private static final String ADMIN_LOGIN = "admin";
+
+	/** Шаблон-фрагмент строки списка администратора */
+	private static final String ROW_FRAGMENT = "fragments/adminUserRow";
+
+	/** Комментарий heartbeat (не является событием для клиента) */
+	private static final Message HEARTBEAT = new Message(null, null);
+
+	/** Событие отключения медленного подписчика: список устарел */
+	private static final Message RELOAD = new Message("reload", Collections.emptyMap());
+
+	private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+	/** Размер очереди событий подписчика */
+	private final int bufferSize;
+
+	/** Время подключения подписчика, мс (клиент EventSource подключается заново) */
+	private final long timeoutMillis;
+
+	/** Максимальное время записи события клиенту, мс */
+	private final long writeTimeoutMillis;
+
+	private final ScheduledExecutorService heartbeat;
+
+	@Autowired
+	private UserRepository users;
+
+	/** Кэш отображенных строк списков (HTML строки события) */
+	@Autowired
+	private UserRowCache userRows;
+
+	/** Пул формирования событий */
+	@Autowired
+	@Qualifier("eventExecutor")
+	private InstrumentedExecutor eventExecutor;
+
+	/** Пул отправки событий подписчикам (поток на отправляющего подписчика) */
+	@Autowired
+	@Qualifier("eventSenderExecutor")
+	private InstrumentedExecutor eventSender;
+
+	private final LongAdder published = new LongAdder();
+
+	private final LongAdder sent = new LongAdder();
+
+	private final LongAdder evicted = new LongAdder();
+
+	private final LongAdder disconnected = new LongAdder();
+
+	private final LongAdder stalled = new LongAdder();
+
+	private final LongAdder closed = new LongAdder();
+
+	/**
+	 * Конструктор
+	 *
+	 * @param bufferSize размер очереди событий подписчика
+	 * @param timeoutMillis время подключения подписчика, мс
+	 * @param writeTimeoutMillis максимальное время записи события клиенту, мс
+	 * @param heartbeatSeconds период heartbeat, с
+	 */
+	public UserEventBroadcaster(
+			@Value("${school.user-events.buffer-size:1000}") int bufferSize,
+			@Value("${school.user-events.timeout-millis:1800000}") long timeoutMillis,
+			@Value("${school.user-events.write-timeout-millis:5000}") long writeTimeoutMillis,
+			@Value("${school.user-events.heartbeat-seconds:15}") long heartbeatSeconds) {
+
+		this.bufferSize = bufferSize;
+		this.timeoutMillis = timeoutMillis;
+		this.writeTimeoutMillis = writeTimeoutMillis;
+		this.heartbeat = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "events-heartbeat");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.heartbeat.scheduleAtFixedRate(() -> broadcast(HEARTBEAT),
+				heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+		long checkMillis = Math.max(100, writeTimeoutMillis / 2);
+		this.heartbeat.scheduleAtFixedRate(this::checkWrites, checkMillis, checkMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Подписка на изменения пользователей
+	 *
+	 * @param sessionId сессия подписчика: соединение закрывается при завершении сессии
+	 * @return поток событий подписчика (text/event-stream)
+	 */
+	public SseEmitter subscribe(String sessionId) {
+
+		SseEmitter emitter = new SseEmitter(timeoutMillis);
+		Subscriber subscriber = new Subscriber(emitter, sessionId, bufferSize);
+		emitter.onCompletion(() -> subscribers.remove(subscriber));
+		emitter.onTimeout(() -> subscribers.remove(subscriber));
+		subscribers.add(subscriber);
+		return emitter;
+	}
+	/** конец subscribe() */
+
+	/** Изменение пользователя, после фиксации транзакции */
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onUserChanged(UserChangedEvent event) {
+
+		if (event.getType() == UserChangedEvent.Type.DELETED) {
+			Map<String, Object> data = new LinkedHashMap<>();
+			data.put("login", event.getLogin());
+			broadcast(new Message("deleted", data));
+			return;
+		}
+		publishRows(event.getType() == UserChangedEvent.Type.CREATED ? "created" : "updated",
+				Collections.singletonList(event.getLogin()));
+	}
+
+	/** Пакет импорта, после фиксации транзакции */
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onUsersImported(UsersImportedEvent event) {
+		publishRows("created", event.getLogins());
+	}
+
+	/**
+	 * Рассылка строк пользователей: краткие данные читаются с основной БД одним запросом
+	 * в пуле eventExecutor, только если есть подписчики. Администратор в список не входит
+	 */
+	private void publishRows(String name, Collection<String> logins) {
+
+		if (subscribers.isEmpty()) {
+			return;
+		}
+		try {
+			eventExecutor.execute(() -> {
+				List<UserSummary> rows = ReplicaRouting.onPrimary(() -> users.findSummariesByLoginIn(logins));
+				for (UserSummary user : rows) {
+					if (!ADMIN_LOGIN.equals(user.getLogin())) {
+						Map<String, Object> data = new LinkedHashMap<>();
+						data.put("login", user.getLogin());
+						data.put("id", user.getId());
+						data.put("html", userRows.render(ROW_FRAGMENT, user));
+						broadcast(new Message(name, data));
+					}
+				}
+			});
+		} catch (TaskRejectedException e) {
+			/** пул перегружен: изменения не доставлены, подписчики отключаются для перезагрузки списка */
+			subscribers.forEach(this::evict);
+		}
+	}
+
+	/** Добавление события в очереди подписчиков, без блокировки */
+	private void broadcast(Message message) {
+
+		if (message != HEARTBEAT) {
+			published.increment();
+		}
+		for (Subscriber subscriber : subscribers) {
+			if (subscriber.queue.offer(message)) {
+				schedule(subscriber);
+			} else {
+				evict(subscriber);
+			}
+		}
+	}
+
+	/** Отключение медленного подписчика: событие reload и закрытие соединения задачей отправки */
+	private void evict(Subscriber subscriber) {
+
+		if (subscribers.remove(subscriber)) {
+			evicted.increment();
+			subscriber.evicted = true;
+			schedule(subscriber);
+		}
+	}
+
+	/**
+	 * Завершение сессии (выход, удаление пользователя, истечение времени): соединения подписчиков
+	 * сессии закрываются задачей отправки (запись клиенту может выполняться в этот момент)
+	 */
+	@Override
+	public void sessionDestroyed(HttpSessionEvent event) {
+
+		String sessionId = event.getSession().getId();
+		for (Subscriber subscriber : subscribers) {
+			if (sessionId.equals(subscriber.sessionId) && subscribers.remove(subscriber)) {
+				closed.increment();
+				subscriber.closed = true;
+				schedule(subscriber);
+			}
+		}
+	}
+	/** конец sessionDestroyed() */
+
+	@Override
+	public void sessionCreated(HttpSessionEvent event) {
+	}
+
+	/** Отключение подписчиков, запись которым выполняется дольше writeTimeoutMillis */
+	private void checkWrites() {
+
+		long now = System.currentTimeMillis();
+		for (Subscriber subscriber : subscribers) {
+			long started = subscriber.writeStarted;
+			if (started != 0 && now - started > writeTimeoutMillis) {
+				stalled.increment();
+				evict(subscriber);
+			}
+		}
+	}
+
+	/** Запуск отправки очереди подписчика, если она еще не запущена */
+	private void schedule(Subscriber subscriber) {
+
+		if (!subscriber.scheduled.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			eventSender.execute(() -> drain(subscriber));
+		} catch (TaskRejectedException e) {
+			/** все потоки отправки заняты: подписчик отключается, клиент подключится заново */
+			subscriber.scheduled.set(false);
+			subscribers.remove(subscriber);
+			complete(subscriber);
+		}
+	}
+
+	/**
+	 * Отправка очереди подписчика клиенту. Ошибка записи - клиент отключился.
+	 * Отключенному медленному подписчику очередь не отправляется (только reload),
+	 * соединение завершенной сессии закрывается
+	 */
+	private void drain(Subscriber subscriber) {
+
+		try {
+			Message message;
+			while (!subscriber.evicted && !subscriber.closed && (message = subscriber.queue.poll()) != null) {
+				send(subscriber, message);
+			}
+			if (subscriber.evicted || subscriber.closed) {
+				subscriber.queue.clear();
+				if (subscriber.evicted && !subscriber.completed.get()) {
+					send(subscriber, RELOAD);
+				}
+				complete(subscriber);
+				return;
+			}
+		} catch (IOException | IllegalStateException e) {
+			subscribers.remove(subscriber);
+			disconnected.increment();
+			return;
+		} finally {
+			subscriber.scheduled.set(false);
+		}
+		if (!subscriber.queue.isEmpty() || subscriber.evicted || subscriber.closed) {
+			schedule(subscriber);
+		}
+	}
+	/** конец drain() */
+
+	/** Запись события клиенту, время начала записи - для проверки checkWrites */
+	private void send(Subscriber subscriber, Message message) throws IOException {
+
+		subscriber.writeStarted = System.currentTimeMillis();
+		try {
+			if (message == HEARTBEAT) {
+				subscriber.emitter.send(SseEmitter.event().comment("heartbeat"));
+			} else {
+				subscriber.emitter.send(SseEmitter.event().name(message.name).data(message.data, MediaType.APPLICATION_JSON));
+				sent.increment();
+			}
+		} finally {
+			subscriber.writeStarted = 0;
+		}
+	}
+
+	/** Закрытие соединения подписчика (один раз) */
+	private void complete(Subscriber subscriber) {
+
+		if (subscriber.completed.compareAndSet(false, true)) {
+			subscriber.emitter.complete();
+		}
+	}
+
+	/**
+	 * Статистика рассылки
+	 *
+	 * @return подписчики, события, отправленные сообщения, отключенные медленные подписчики
+	 *         (из них - по времени записи), закрытые клиентами соединения, закрытые при
+	 *         завершении сессии соединения
+	 */
+	public Map<String, Object> statistics() {
+
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("subscribers", subscribers.size());
+		result.put("bufferSize", bufferSize);
+		result.put("published", published.sum());
+		result.put("sent", sent.sum());
+		result.put("evicted", evicted.sum());
+		result.put("stalled", stalled.sum());
+		result.put("disconnected", disconnected.sum());
+		result.put("sessionClosed", closed.sum());
+		return result;
+	}
+
+	/** Остановка heartbeat и закрытие соединений подписчиков */
+	@Override
+	public void destroy() {
+
+		heartbeat.shutdownNow();
+		for (Subscriber subscriber : subscribers) {
+			complete(subscriber);
+		}
+		subscribers.clear();
+	}
+
+	/** Событие: имя и данные (JSON) */
+	private static final class Message {
+
+		private final String name;
+
+		private final Object data;
+
+		Message(String name, Object data) {
+			this.name = name;
+			this.data = data;
+		}
+	}
+
+	/** Подписчик: поток событий клиента, сессия и очередь неотправленных событий */
+	private static final class Subscriber {
+
+		private final SseEmitter emitter;
+
+		private final String sessionId;
+
+		private final Queue<Message> queue;
+
+		/** Задача отправки очереди запущена */
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+
+		/** Подписчик отключен как медленный */
+		private volatile boolean evicted;
+
+		/** Сессия подписчика завершена */
+		private volatile boolean closed;
+
+		/** Соединение закрыто */
+		private final AtomicBoolean completed = new AtomicBoolean();
+
+		/** Время начала текущей записи клиенту, мс (0 - запись не выполняется) */
+		private volatile long writeStarted;
+
+		Subscriber(SseEmitter emitter, String sessionId, int bufferSize) {
+			this.emitter = emitter;
+			this.sessionId = sessionId;
+			this.queue = new ArrayBlockingQueue<>(bufferSize);
+		}
+	}
+
+}
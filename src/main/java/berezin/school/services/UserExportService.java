@@ -0,0 +1,155 @@
+package berezin.school.services;
+/**
+ * Класс UserExportService - потоковый экспорт пользователей (CSV, NDJSON)
+ * Пользователи читаются курсором БД в транзакции только для чтения и сразу
+ * записываются в выходной поток. Строки читаются в объекты UserExportRow, а не в сущности:
+ * они не хранятся в контексте персистентности и не вытесняют из кэша второго уровня
+ * пользователей, читаемых другими запросами; расход памяти не зависит от размера таблицы.
+ * Пароли не экспортируются
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.stream.Stream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import berezin.school.repositories.UserRepository;
+import berezin.school.user.UserExportRow;
+
+@Service
+public class UserExportService {
+
+	/** Формат экспорта */
+	public enum Format {
+
+		/** CSV в формате UserCsv (столбец password пустой) */
+		CSV("text/csv", "csv"),
+
+		/** JSON объект на строку (newline delimited JSON) */
+		NDJSON("application/x-ndjson", "ndjson");
+
+		private final String contentType;
+
+		private final String extension;
+
+		Format(String contentType, String extension) {
+			this.contentType = contentType;
+			this.extension = extension;
+		}
+
+		public String getContentType() {
+			return contentType;
+		}
+
+		public String getExtension() {
+			return extension;
+		}
+
+		/**
+		 * Формат по имени параметра запроса (без учета регистра)
+		 *
+		 * @param name имя формата
+		 * @return формат; null, если формат неизвестен
+		 */
+		public static Format of(String name) {
+
+			for (Format format : values()) {
+				if (format.name().equalsIgnoreCase(name)) {
+					return format;
+				}
+			}
+			return null;
+		}
+	}
+
+	@Autowired
+	private UserRepository users;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	/**
+	 * Экспорт всех пользователей, кроме администратора, в порядке id
+	 *
+	 * @param format формат экспорта
+	 * @param out выходной поток (не закрывается)
+	 * @throws IOException ошибка записи
+	 */
+	@Transactional(readOnly = true)
+	public void export(Format format, OutputStream out) throws IOException {
+
+		try (Stream<UserExportRow> stream = users.streamAllLoginNotLikeAdmin()) {
+			if (format == Format.CSV) {
+				writeCsv(stream, out);
+			} else {
+				writeNdjson(stream, out);
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+	/** конец export() */
+
+	/** Запись CSV: заголовок и строка на пользователя */
+	private void writeCsv(Stream<UserExportRow> stream, OutputStream out) throws IOException {
+
+		Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+		writer.write(UserCsv.HEADER);
+		writer.write('\n');
+		stream.forEach(user -> {
+			try {
+				writer.write(UserCsv.escape(user.getLogin()));
+				writer.write(",,");
+				writer.write(UserCsv.escape(user.getName()));
+				writer.write(',');
+				writer.write(UserCsv.escape(user.getSurName()));
+				writer.write(',');
+				writer.write(UserCsv.escape(user.getAdress()));
+				writer.write(',');
+				writer.write(UserCsv.escape(user.getBirthDate()));
+				writer.write(',');
+				writer.write(UserCsv.escape(user.getInfo()));
+				writer.write('\n');
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+		writer.flush();
+	}
+
+	/** Запись NDJSON: JSON объект пользователя на строку, потоковым генератором Jackson */
+	private void writeNdjson(Stream<UserExportRow> stream, OutputStream out) throws IOException {
+
+		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+		JsonGenerator generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+		generator.setRootValueSeparator(null);
+		stream.forEach(user -> {
+			try {
+				generator.writeStartObject();
+				generator.writeNumberField("id", user.getId());
+				generator.writeStringField("login", user.getLogin());
+				generator.writeStringField("name", user.getName());
+				generator.writeStringField("surName", user.getSurName());
+				generator.writeStringField("adress", user.getAdress());
+				generator.writeStringField("birthDate",
+						user.getBirthDate() == null ? null : dateFormat.format(user.getBirthDate()));
+				generator.writeStringField("info", user.getInfo());
+				generator.writeEndObject();
+				generator.writeRaw('\n');
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+		generator.flush();
+	}
+
+}
@@ -0,0 +1,280 @@
+package berezin.school.services;
+/**
+ * Класс UserImportService - массовый импорт пользователей (CSV, JSON)
+ * Строки проверяются валидацией класса User и на уникальность логина,
+ * корректные пользователи сохраняются пакетами по school.import.batch-size:
+ * INSERT объединяются в JDBC batch, после каждого пакета контекст персистентности
+ * сбрасывается в БД и очищается, поэтому расход памяти не зависит от размера файла.
+ * Пароли сохраняются хэшами (PasswordService), хэши пакета вычисляются в пуле
+ * passwordExecutor до начала транзакции: соединение с БД не занято на время BCrypt.
+ * Каждый пакет сохраняется отдельной короткой транзакцией, при ошибке сохраненные
+ * пакеты не отменяются. Логин, добавленный параллельно после проверки, отклоняется в отчете
+ * (пакет сохраняется по одной строке). Логины сохраненного пакета публикуются событием
+ * UsersImportedEvent после фиксации транзакции
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import berezin.school.config.ReplicaRouting;
+import berezin.school.events.UsersImportedEvent;
+import berezin.school.repositories.UserRepository;
+import berezin.school.user.User;
+import berezin.school.wrappers.ImportReport;
+
+@Service
+public class UserImportService {
+
+	/** Логин администратора, не может быть импортирован */
+	private static final String ADMIN_LOGIN = "admin";
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Autowired
+	private UserRepository users;
+
+	@Autowired
+	private Validator validator;
+
+	@Autowired
+	private PasswordService passwords;
+
+	/** Транзакция сохранения пакета */
+	private final TransactionTemplate transaction;
+
+	/** Публикация логинов импортированных пользователей (фильтр логинов) */
+	@Autowired
+	private ApplicationEventPublisher events;
+
+	/** Размер пакета (flush/clear), согласован с hibernate.jdbc.batch_size */
+	@Value("${school.import.batch-size:50}")
+	private int batchSize;
+
+	/** Конструктор */
+	@Autowired
+	public UserImportService(PlatformTransactionManager transactionManager) {
+		this.transaction = new TransactionTemplate(transactionManager);
+	}
+
+	/**
+	 * Импорт пользователей из CSV (формат UserCsv). Первая строка может быть заголовком
+	 *
+	 * @param reader источник данных
+	 * @return отчет об импорте
+	 * @throws IOException ошибка чтения
+	 */
+	public ImportReport importCsv(Reader reader) throws IOException {
+
+		long start = System.currentTimeMillis();
+		ImportReport report = new ImportReport();
+		Batch batch = new Batch(report);
+		BufferedReader lines = new BufferedReader(reader);
+
+		int row = 0;
+		List<String> record;
+		while ((record = UserCsv.readRecord(lines)) != null) {
+			row++;
+			if (row == 1 && UserCsv.HEADER.equals(String.join(",", record))) {
+				continue;
+			}
+			report.addRow();
+			try {
+				batch.add(row, UserCsv.toUser(record));
+			} catch (IllegalArgumentException e) {
+				report.reject(row, record.get(0), e.getMessage());
+			}
+		}
+		batch.flush();
+
+		report.setElapsedMillis(System.currentTimeMillis() - start);
+		return report;
+	}
+	/** конец importCsv() */
+
+	/**
+	 * Импорт пользователей из списка (JSON массив)
+	 *
+	 * @param rows пользователи, номер строки - позиция в списке (с 1)
+	 * @return отчет об импорте
+	 */
+	public ImportReport importUsers(List<User> rows) {
+
+		long start = System.currentTimeMillis();
+		ImportReport report = new ImportReport();
+		Batch batch = new Batch(report);
+
+		int row = 0;
+		for (User user : rows) {
+			row++;
+			report.addRow();
+			batch.add(row, user);
+		}
+		batch.flush();
+
+		report.setElapsedMillis(System.currentTimeMillis() - start);
+		return report;
+	}
+	/** конец importUsers() */
+
+	/**
+	 * Пакет импортируемых пользователей. Накапливает проверенные строки и сохраняет их
+	 * при достижении batchSize: один запрос на проверку существующих логинов пакета,
+	 * хэши паролей в пуле passwordExecutor, затем транзакция: INSERT пакетом, flush и clear
+	 * контекста персистентности
+	 */
+	private class Batch {
+
+		private final ImportReport report;
+
+		/** Логины, уже встреченные в файле (дубликаты внутри файла) */
+		private final Set<String> seen = new HashSet<>();
+
+		/** Строки текущего пакета: логин - номер строки, пользователь */
+		private final Map<String, Integer> pendingRows = new HashMap<>();
+
+		private final List<User> pending = new ArrayList<>();
+
+		Batch(ImportReport report) {
+			this.report = report;
+		}
+
+		/** Проверка строки и добавление в пакет */
+		void add(int row, User user) {
+
+			/** id и версия записи назначаются при сохранении, значения из файла не используются */
+			user.setId(null);
+			user.setVersion(null);
+			Set<ConstraintViolation<User>> violations = validator.validate(user);
+			if (!violations.isEmpty()) {
+				report.reject(row, user.getLogin(), violations.iterator().next().getMessage());
+				return;
+			}
+			if (ADMIN_LOGIN.equals(user.getLogin()) || !seen.add(user.getLogin())) {
+				report.reject(row, user.getLogin(), "логин уже существует в системе");
+				return;
+			}
+
+			pending.add(user);
+			pendingRows.put(user.getLogin(), row);
+			if (pending.size() >= batchSize) {
+				flush();
+			}
+		}
+
+		/** Сохранение пакета */
+		void flush() {
+
+			if (pending.isEmpty()) {
+				return;
+			}
+
+			/** Существующие логины - с основной БД (реплика может не содержать новых пользователей) */
+			Set<String> existing = new HashSet<>(
+					ReplicaRouting.onPrimary(() -> users.findExistingLogins(pendingRows.keySet())));
+			List<User> accepted = new ArrayList<>(pending.size());
+			for (User user : pending) {
+				if (existing.contains(user.getLogin())) {
+					report.reject(pendingRows.get(user.getLogin()), user.getLogin(), "логин уже существует в системе");
+				} else {
+					accepted.add(user);
+				}
+			}
+			hashPasswords(accepted);
+
+			int imported = accepted.isEmpty() ? 0 : save(accepted);
+
+			report.addImported(imported);
+			pending.clear();
+			pendingRows.clear();
+		}
+
+		/**
+		 * Сохранение проверенных пользователей пакета одной транзакцией. Если логин добавлен
+		 * параллельным запросом после проверки (нарушение ограничения users_login_key), пакет
+		 * сохраняется по одной строке: строки с существующими логинами отклоняются в отчете.
+		 * Логины сохраненных пользователей публикуются после фиксации транзакции
+		 *
+		 * @return количество сохраненных пользователей
+		 */
+		private int save(List<User> accepted) {
+
+			List<String> saved = new ArrayList<>(accepted.size());
+			try {
+				insert(accepted);
+				accepted.forEach(user -> saved.add(user.getLogin()));
+			} catch (RuntimeException e) {
+				if (!User.isLoginConflict(e)) {
+					throw e;
+				}
+				for (User user : accepted) {
+					try {
+						insert(Collections.singletonList(user));
+						saved.add(user.getLogin());
+					} catch (RuntimeException rowError) {
+						if (!User.isLoginConflict(rowError)) {
+							throw rowError;
+						}
+						report.reject(pendingRows.get(user.getLogin()), user.getLogin(), "логин уже существует в системе");
+					}
+				}
+			}
+			if (!saved.isEmpty()) {
+				events.publishEvent(new UsersImportedEvent(saved));
+			}
+			return saved.size();
+		}
+
+		/** Транзакция: INSERT пакетом, flush и clear контекста персистентности */
+		private void insert(List<User> rows) {
+
+			/** id, выделенный отмененной транзакцией, не используется: запись сохраняется как новая */
+			for (User user : rows) {
+				user.setId(null);
+			}
+			transaction.execute(status -> {
+				for (User user : rows) {
+					entityManager.persist(user);
+				}
+				entityManager.flush();
+				entityManager.clear();
+				return null;
+			});
+		}
+
+		/**
+		 * Хэши паролей пакета в пуле passwordExecutor (вне транзакции). Если очередь пула
+		 * заполнена, хэш вычисляется в текущем потоке: импорт замедляется, но не прерывается
+		 */
+		private void hashPasswords(List<User> accepted) {
+
+			List<CompletableFuture<String>> hashes = accepted.stream()
+					.map(user -> passwords.hashAsync(user.getPassword())
+							.exceptionally(e -> passwords.hash(user.getPassword())))
+					.collect(Collectors.toList());
+			for (int i = 0; i < accepted.size(); i++) {
+				accepted.get(i).setPassword(hashes.get(i).join());
+			}
+		}
+	}
+
+}
@@ -0,0 +1,242 @@
+package berezin.school.services;
+/**
+ * Класс UserListVersion - версия списка пользователей (условные GET запросы страниц списка)
+ * Версия читается из БД: журнал изменений user_changes (миграция V8) дополняется триггером
+ * при любом изменении таблицы users - этим и другими экземплярами приложения, импортом,
+ * запросами SQL. Фоновый поток каждые school.user-list.version-poll-millis читает версию
+ * журнала с основной БД (UserChangeRepository.findVersion), ETag страницы списка - версия
+ * журнала (одинаковая на всех экземплярах), Last-Modified - время, когда экземпляр обнаружил
+ * изменение. Запрос страницы к БД для версии не выполняется: изменение, сделанное другим
+ * экземпляром или в БД, учитывается не позже чем через период чтения версии.
+ * После изменения этим экземпляром (события UserChangedEvent, UsersImportedEvent) версия
+ * не выдается до следующего чтения версии.
+ * Версия читается до запроса страницы, поэтому страница не может быть старше своей версии.
+ * При чтении с реплик версия не выдается в течение school.datasource.replica.read-your-writes-millis
+ * после изменения - реплика может вернуть страницу без последнего изменения.
+ * Без журнала (БД не PostgreSQL, схема Hibernate) изменения в БД не отслеживаются: версия -
+ * счетчик изменений в памяти, только если задано school.user-list.single-instance=true
+ * (единственный экземпляр приложения изменяет пользователей), иначе версия не выдается
+ */
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import berezin.school.config.ReplicaRouting;
+import berezin.school.events.UserChangedEvent;
+import berezin.school.events.UsersImportedEvent;
+import berezin.school.repositories.UserChangeRepository;
+
+@Component
+public class UserListVersion implements DisposableBean {
+
+	/** Версия экземпляра приложения: после перезапуска счетчик в памяти начинается заново */
+	private final String instance = Long.toHexString(System.currentTimeMillis());
+
+	/** Текущая версия; null - версия неизвестна (журнал еще не прочитан или недоступен) */
+	private final AtomicReference<Version> current = new AtomicReference<>();
+
+	/** Время изменения этим экземпляром, не учтенного версией журнала (System.nanoTime, 0 - нет) */
+	private final AtomicLong pendingSince = new AtomicLong();
+
+	/** Чтение с реплик (указаны URL реплик) */
+	private final boolean replicas;
+
+	/** Задержка репликации, мс */
+	private final long readYourWritesMillis;
+
+	/** Период чтения версии журнала, мс */
+	private final long pollMillis;
+
+	/** Версия в памяти без журнала: пользователей изменяет только этот экземпляр */
+	private final boolean singleInstance;
+
+	private final ScheduledExecutorService poller;
+
+	@Autowired
+	private UserChangeRepository changes;
+
+	/** Версия читается из журнала изменений */
+	private volatile boolean journal;
+
+	/**
+	 * Конструктор
+	 *
+	 * @param replicaUrls URL реплик через запятую (пусто - реплик нет)
+	 * @param readYourWritesMillis задержка репликации, мс
+	 * @param pollMillis период чтения версии журнала, мс
+	 * @param singleInstance версия в памяти без журнала (единственный экземпляр приложения)
+	 */
+	public UserListVersion(
+			@Value("${school.datasource.replica.urls:}") String replicaUrls,
+			@Value("${school.datasource.replica.read-your-writes-millis:5000}") long readYourWritesMillis,
+			@Value("${school.user-list.version-poll-millis:1000}") long pollMillis,
+			@Value("${school.user-list.single-instance:false}") boolean singleInstance) {
+
+		this.replicas = !replicaUrls.trim().isEmpty();
+		this.readYourWritesMillis = readYourWritesMillis;
+		this.pollMillis = pollMillis;
+		this.singleInstance = singleInstance;
+		this.poller = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "user-list-version");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/** Выбор источника версии после запуска приложения (миграции выполнены) */
+	@EventListener(ApplicationReadyEvent.class)
+	public void onApplicationReady() {
+		poller.execute(this::start);
+	}
+
+	/** Журнал есть - чтение версии журнала, иначе счетчик в памяти (single-instance) */
+	private void start() {
+
+		try {
+			journal = ReplicaRouting.onPrimary(changes::isAvailable);
+		} catch (RuntimeException e) {
+			poller.schedule(this::start, pollMillis, TimeUnit.MILLISECONDS);
+			return;
+		}
+		if (journal) {
+			poller.execute(this::poll);
+		} else if (singleInstance) {
+			current.compareAndSet(null, new Version(instance, 0, System.currentTimeMillis()));
+		}
+	}
+	/** конец start() */
+
+	/**
+	 * Чтение версии журнала. Новая версия - время изменения текущее. Изменение этим экземпляром,
+	 * отмеченное до начала чтения, зафиксировано и учтено версией журнала. При ошибке чтения
+	 * версия не выдается до следующего успешного чтения
+	 */
+	private void poll() {
+
+		long started = System.nanoTime();
+		try {
+			long[] stamp = ReplicaRouting.onPrimary(changes::findVersion);
+			String tag = stamp[0] + "." + stamp[1];
+			Version version = current.get();
+			if (version == null || !version.tag.equals(tag)) {
+				current.set(new Version(tag, 0, System.currentTimeMillis()));
+			}
+			long pending = pendingSince.get();
+			if (pending != 0 && pending - started < 0) {
+				pendingSince.compareAndSet(pending, 0);
+			}
+		} catch (RuntimeException e) {
+			current.set(null);
+		}
+		if (!poller.isShutdown()) {
+			poller.schedule(this::poll, pollMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+	/** конец poll() */
+
+	/**
+	 * Текущая версия списка
+	 *
+	 * @return версия; null - версия не выдается (неизвестна, изменение еще не учтено версией
+	 *         журнала или могло еще не попасть на реплики)
+	 */
+	public Version current() {
+
+		Version version = current.get();
+		if (version == null || pendingSince.get() != 0) {
+			return null;
+		}
+		if (replicas && System.currentTimeMillis() - version.lastModified < readYourWritesMillis) {
+			return null;
+		}
+		return version;
+	}
+
+	/** Изменение пользователя */
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onUserChanged(UserChangedEvent event) {
+		changed();
+	}
+
+	/**
+	 * Пакет импорта. Изменение учитывается один раз после завершения транзакции импорта
+	 * (одна синхронизация на транзакцию, а не на пакет, как у TransactionalEventListener)
+	 */
+	@EventListener
+	public void onUsersImported(UsersImportedEvent event) {
+
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			changed();
+			return;
+		}
+		if (TransactionSynchronizationManager.hasResource(this)) {
+			return;
+		}
+		TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCompletion(int status) {
+				TransactionSynchronizationManager.unbindResourceIfPossible(UserListVersion.this);
+				changed();
+			}
+		});
+	}
+
+	/** Изменение этим экземпляром: с журналом - до следующего чтения версии, без журнала - счетчик */
+	private void changed() {
+
+		if (journal) {
+			long now = System.nanoTime();
+			pendingSince.set(now == 0 ? 1 : now);
+			return;
+		}
+		long now = System.currentTimeMillis();
+		current.updateAndGet(version -> version == null ? null : new Version(instance, version.counter + 1, now));
+	}
+
+	/** Остановка чтения версии журнала */
+	@Override
+	public void destroy() {
+		poller.shutdownNow();
+	}
+
+	/** Версия списка: ETag и время изменения */
+	public final class Version {
+
+		/** Версия журнала или версия экземпляра приложения (счетчик в памяти) */
+		private final String tag;
+
+		/** Счетчик изменений в памяти (без журнала) */
+		private final long counter;
+
+		private final long lastModified;
+
+		private Version(String tag, long counter, long lastModified) {
+			this.tag = tag;
+			this.counter = counter;
+			this.lastModified = lastModified;
+		}
+
+		/** Значение заголовка ETag */
+		public String getETag() {
+			return "\"" + (journal ? tag : tag + "-" + counter) + "\"";
+		}
+
+		/** Время изменения, мс */
+		public long getLastModified() {
+			return lastModified;
+		}
+	}
+
+}
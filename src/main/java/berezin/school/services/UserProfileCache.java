@@ -0,0 +1,107 @@
+package berezin.school.services;
+/**
+ * Класс UserProfileCache - кэш профилей пользователей (страница showUser)
+ * Read-through кэш перед UserRepository.findByLogin: ограничен по размеру,
+ * записи удаляются через заданное время после загрузки. Запись пользователя
+ * удаляется из кэша по событию UserChangedEvent после фиксации транзакции.
+ * Профиль, измененный менее school.datasource.replica.read-your-writes-millis назад,
+ * загружается с основной БД (реплика может вернуть прежние данные, которые попали бы в кэш).
+ * Ведется статистика попаданий, промахов и вытеснений
+ */
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import berezin.school.config.ReplicaRouting;
+import berezin.school.events.UserChangedEvent;
+import berezin.school.repositories.UserRepository;
+import berezin.school.user.User;
+
+@Component
+public class UserProfileCache {
+
+	private final Cache<String, User> cache;
+
+	/** Логины, измененные в пределах задержки репликации */
+	private final Cache<String, Boolean> recentlyChanged;
+
+	@Autowired
+	private UserRepository users;
+
+	/**
+	 * Конструктор
+	 *
+	 * @param maxSize максимальное количество профилей в кэше
+	 * @param ttlSeconds время жизни записи после загрузки, с
+	 * @param readYourWritesMillis задержка репликации, мс
+	 */
+	public UserProfileCache(
+			@Value("${school.profile-cache.max-size:10000}") long maxSize,
+			@Value("${school.profile-cache.ttl-seconds:300}") long ttlSeconds,
+			@Value("${school.datasource.replica.read-your-writes-millis:5000}") long readYourWritesMillis) {
+
+		this.cache = Caffeine.newBuilder()
+				.maximumSize(maxSize)
+				.expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+				.recordStats()
+				.build();
+		this.recentlyChanged = Caffeine.newBuilder()
+				.maximumSize(maxSize)
+				.expireAfterWrite(readYourWritesMillis, TimeUnit.MILLISECONDS)
+				.build();
+	}
+
+	/**
+	 * Пользователь по логину. При промахе загружается из БД (один запрос на логин
+	 * при одновременных обращениях), отсутствующие пользователи не кэшируются
+	 *
+	 * @param login логин
+	 * @return пользователь, null - пользователь не найден
+	 */
+	public User findByLogin(String login) {
+
+		return cache.get(login, this::load);
+	}
+
+	/** Загрузка пользователя: недавно измененный - с основной БД */
+	private User load(String login) {
+
+		if (recentlyChanged.getIfPresent(login) != null) {
+			return ReplicaRouting.onPrimary(() -> users.findByLogin(login));
+		}
+		return users.findByLogin(login);
+	}
+
+	/** Удаление пользователя из кэша после изменения */
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onUserChanged(UserChangedEvent event) {
+
+		recentlyChanged.put(event.getLogin(), Boolean.TRUE);
+		cache.invalidate(event.getLogin());
+	}
+
+	/**
+	 * Статистика кэша
+	 *
+	 * @return размер, попадания, промахи, доля попаданий, вытеснения
+	 */
+	public Map<String, Object> statistics() {
+
+		CacheStats stats = cache.stats();
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("size", cache.estimatedSize());
+		result.put("hits", stats.hitCount());
+		result.put("misses", stats.missCount());
+		result.put("hitRate", stats.hitRate());
+		result.put("evictions", stats.evictionCount());
+		return result;
+	}
+
+}
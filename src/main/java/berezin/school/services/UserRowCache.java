@@ -0,0 +1,133 @@
+package berezin.school.services;
+/**
+ * Класс UserRowCache - кэш отображенных строк списка пользователей (userList, adminUserList)
+ * Ячейки строки пользователя отображаются шаблоном-фрагментом (fragments/userRow,
+ * fragments/adminUserRow) один раз и хранятся в кэше как HTML; страница списка собирается
+ * из готовых строк (вызов из шаблона: ${@userRowCache.render('fragments/userRow', user)}).
+ * Строка действительна для id и версии записи пользователя: изменение пользователя
+ * увеличивает версию, и строка отображается заново. Строки пользователя удаляются из кэша
+ * по событию UserChangedEvent после фиксации транзакции (добавление, изменение, удаление).
+ * Фрагменты отображаются вне запроса: ссылки строятся от пути приложения (contextPath),
+ * без идентификатора сессии в URL. school.row-cache.max-size=0 - кэш отключен, строки
+ * отображаются при каждом запросе
+ */
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.ServletContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import berezin.school.events.UserChangedEvent;
+import berezin.school.user.UserSummary;
+
+@Component
+public class UserRowCache {
+
+	/** Шаблоны-фрагменты строк списков */
+	private static final List<String> FRAGMENTS = Arrays.asList("fragments/userRow", "fragments/adminUserRow");
+
+	/** Строки: шаблон и логин - отображенная строка */
+	private final Cache<String, Row> cache;
+
+	/** Кэш включен (размер больше 0) */
+	private final boolean enabled;
+
+	@Autowired
+	private TemplateEngine templateEngine;
+
+	@Autowired
+	private ServletContext servletContext;
+
+	/**
+	 * Конструктор
+	 *
+	 * @param maxSize максимальное количество строк в кэше (по всем шаблонам), 0 - кэш отключен
+	 */
+	public UserRowCache(@Value("${school.row-cache.max-size:20000}") long maxSize) {
+
+		this.enabled = maxSize > 0;
+		this.cache = Caffeine.newBuilder()
+				.maximumSize(maxSize)
+				.recordStats()
+				.build();
+	}
+
+	/**
+	 * Ячейки строки пользователя. При отсутствии в кэше или другой версии пользователя
+	 * строка отображается шаблоном и сохраняется в кэше
+	 *
+	 * @param fragment шаблон-фрагмент строки
+	 * @param user пользователь (с версией записи; без версии строка не кэшируется)
+	 * @return HTML ячеек строки
+	 */
+	public String render(String fragment, UserSummary user) {
+
+		String key = fragment + ':' + user.getLogin();
+		Row row = enabled ? cache.getIfPresent(key) : null;
+		if (row != null && row.id.equals(user.getId()) && row.version.equals(user.getVersion())) {
+			return row.html;
+		}
+
+		Context context = new Context();
+		context.setVariable("user", user);
+		context.setVariable("contextPath", servletContext.getContextPath());
+		String html = templateEngine.process(fragment, context);
+		if (enabled && user.getVersion() != null) {
+			cache.put(key, new Row(user.getId(), user.getVersion(), html));
+		}
+		return html;
+	}
+	/** конец render() */
+
+	/** Удаление строк пользователя после изменения */
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onUserChanged(UserChangedEvent event) {
+
+		for (String fragment : FRAGMENTS) {
+			cache.invalidate(fragment + ':' + event.getLogin());
+		}
+	}
+
+	/**
+	 * Статистика кэша
+	 *
+	 * @return размер, попадания, промахи, доля попаданий, вытеснения
+	 */
+	public Map<String, Object> statistics() {
+
+		CacheStats stats = cache.stats();
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("size", cache.estimatedSize());
+		result.put("hits", stats.hitCount());
+		result.put("misses", stats.missCount());
+		result.put("hitRate", stats.hitRate());
+		result.put("evictions", stats.evictionCount());
+		return result;
+	}
+
+	/** Отображенная строка и версия пользователя, для которой она отображена */
+	private static final class Row {
+
+		private final Integer id;
+
+		private final Integer version;
+
+		private final String html;
+
+		Row(Integer id, Integer version, String html) {
+			this.id = id;
+			this.version = version;
+			this.html = html;
+		}
+	}
+
+}
@@ -0,0 +1,90 @@
+package berezin.school.services;
+/**
+ * Класс UserSearchService - поиск пользователей по логину, имени и фамилии
+ * Строка поиска разбивается на слова (не более MAX_WORDS, регистр не учитывается).
+ * Сначала ищутся пользователи, у которых каждое слово совпадает с началом логина, имени
+ * или фамилии; если таких нет - пользователи с похожими именами и фамилиями (опечатки).
+ * Запросы выполняются индексами БД (UserRepository.search), время запроса не зависит
+ * от количества пользователей; количество результатов ограничено school.search.max-results
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import berezin.school.repositories.UserRepository;
+import berezin.school.user.UserSummary;
+import berezin.school.wrappers.UserSearchPage;
+
+@Service
+public class UserSearchService {
+
+	/** Максимальное количество слов в строке поиска (остальные слова не учитываются) */
+	private static final int MAX_WORDS = 3;
+
+	@Autowired
+	private UserRepository users;
+
+	/** Минимальная длина самого длинного слова строки поиска */
+	@Value("${school.search.min-length:3}")
+	private int minLength;
+
+	/** Максимальное количество результатов поиска (по всем страницам) */
+	@Value("${school.search.max-results:1000}")
+	private int maxResults;
+
+	/**
+	 * Страница результатов поиска
+	 *
+	 * @param query строка поиска
+	 * @param page номер страницы (с 0)
+	 * @param size размер страницы
+	 * @return страница результатов или сообщение, если строка поиска слишком короткая
+	 */
+	public UserSearchPage search(String query, int page, int size) {
+
+		List<String> words = words(query);
+		String normalized = String.join(" ", words);
+		int pageSize = Math.max(1, Math.min(size, maxResults));
+		if (words.stream().mapToInt(String::length).max().orElse(0) < minLength) {
+			return new UserSearchPage(normalized, pageSize,
+					"Введите не менее " + minLength + " символов логина, имени или фамилии");
+		}
+
+		int offset = Math.max(0, page) * pageSize;
+		if (offset >= maxResults) {
+			return new UserSearchPage(normalized, pageSize,
+					"Показываются только первые " + maxResults + " результатов, уточните запрос");
+		}
+
+		/** Лишняя запись - признак следующей страницы */
+		int limit = Math.min(pageSize + 1, maxResults - offset);
+		boolean fuzzy = false;
+		List<UserSummary> found = users.search(words, false, offset, limit);
+		if (found.isEmpty() && (offset == 0 || users.search(words, false, 0, 1).isEmpty())) {
+			fuzzy = true;
+			found = users.search(words, true, offset, limit);
+		}
+		boolean hasNext = found.size() > pageSize;
+		if (hasNext) {
+			found = found.subList(0, pageSize);
+		}
+		return new UserSearchPage(normalized, found, offset / pageSize, pageSize, hasNext, fuzzy);
+	}
+	/** конец search() */
+
+	/** Различные слова строки поиска в нижнем регистре */
+	private static List<String> words(String query) {
+
+		List<String> words = new ArrayList<>();
+		for (String word : query.trim().toLowerCase(Locale.ROOT).split("\\s+")) {
+			if (!word.isEmpty() && !words.contains(word) && words.size() < MAX_WORDS) {
+				words.add(word);
+			}
+		}
+		return words;
+	}
+
+}
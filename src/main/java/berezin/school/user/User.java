@@ -7,34 +7,61 @@ package berezin.school.user;
 
 import java.io.Serializable;
 import java.util.Date;
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
+import javax.persistence.UniqueConstraint;
+import javax.persistence.Version;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.exception.ConstraintViolationException;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.format.annotation.DateTimeFormat.ISO;
 
-/** Указываем, что класс является сущностью БД (таблица users) */
+/** 
+ * Указываем, что класс является сущностью БД (таблица users)
+ * Уникальность логина обеспечивается ограничением БД users_login_key
+ * Сущность хранится в кэше второго уровня Hibernate (регион User, ehcache.xml)
+ * DynamicUpdate - UPDATE содержит только измененные столбцы
+ */
 @Entity
-@Table(name = "users")
+@DynamicUpdate
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "User")
+@Table(name = "users", uniqueConstraints = @UniqueConstraint(name = User.LOGIN_UNIQUE_CONSTRAINT, columnNames = "login"))
 public class User implements Serializable {
 
 	private static final long serialVersionUID = 10L;
 
+	/** Имя ограничения уникальности логина (используется при обработке ошибки вставки) */
+	public static final String LOGIN_UNIQUE_CONSTRAINT = "users_login_key";
+
+	/** Шаг последовательности users_id_seq (должен совпадать с INCREMENT BY в БД) */
+	public static final int ID_ALLOCATION_SIZE = 50;
+
 	/**
 	 * id - поле id БД 
-	 * Идентификатор записи GenerationType.IDENTITY - значение
-	 * генерируется СУБД, инкрементное поле
+	 * Идентификатор записи GenerationType.SEQUENCE - значения выделяются 
+	 * блоками из последовательности users_id_seq (шаг ID_ALLOCATION_SIZE, оптимизатор pooled).
+	 * В отличие от IDENTITY, id известен до INSERT, что позволяет Hibernate 
+	 * объединять вставки в JDBC batch
 	 */
 	@Id
 	@Column(name = "id")
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_id_seq")
+	@SequenceGenerator(name = "users_id_seq", sequenceName = "users_id_seq", allocationSize = User.ID_ALLOCATION_SIZE)
 	private Integer id;
 
 	/**
@@ -44,17 +71,19 @@ public class User implements Serializable {
 	 */
 	@NotNull(message = "Заполните поле login")
 	@Size(min = 4, max = 10, message = "Длинна логина от 4 до 10 символов!")
-	@Column(name = "login")
+	@Column(name = "login", length = 10)
 	private String login;
 
 	/**
 	 * Пароль пользователя 
 	 * password - поле password БД обязательное для заполнения
-	 * размер - от 4 до 10 символов (валидация)
+	 * размер - от 4 до 10 символов (валидация введенного пароля формы).
+	 * В БД хранится хэш пароля (PasswordService), поэтому валидация сущности 
+	 * при сохранении отключена (javax.persistence.validation.mode=none)
 	 */
 	@NotNull(message = "Заполните поле password")
 	@Size(min = 4, max = 10, message = "Длинна пароля от 4 до 10 символов!")
-	@Column(name = "password")
+	@Column(name = "password", length = 100)
 	private String password;
 
 	/**
@@ -62,7 +91,7 @@ public class User implements Serializable {
 	 * name - поле name БД размер - от 0 до 15 символов (валидация)
 	 */
 	@Size(min = 0, max = 15, message = "Длинна имени от 0 до 15 символов!")
-	@Column(name = "name")
+	@Column(name = "name", length = 15)
 	private String name;
 
 	/**
@@ -71,7 +100,7 @@ public class User implements Serializable {
 	 * (валидация)
 	 */
 	@Size(min = 0, max = 15, message = "Длинна фамилии от 0 до 15 символов!")
-	@Column(name = "surname")
+	@Column(name = "surname", length = 15)
 	private String surName;
 
 	/**
@@ -80,7 +109,7 @@ public class User implements Serializable {
 	 * (валидация)
 	 */
 	@Size(min = 0, max = 100, message = "Длинна адреса от 0 до 100 символов!")
-	@Column(name = "adress")
+	@Column(name = "adress", length = 100)
 	private String adress;
 
 	/**
@@ -100,9 +129,27 @@ public class User implements Serializable {
 	 * (валидация)
 	 */
 	@Size(min = 0, max = 1000, message = "Длинна сообщения от 0 до 1000 символов!")
-	@Column(name = "info")
+	@Column(name = "info", length = 1000)
 	private String info;
 
+	/**
+	 * Версия записи (оптимистическая блокировка) 
+	 * version - поле version БД, увеличивается при каждом изменении пользователя.
+	 * Изменение с устаревшей версией отклоняется (данные изменены в другом сеансе)
+	 */
+	@Version
+	@Column(name = "version", nullable = false)
+	private Integer version;
+
+	/**
+	 * Время последнего изменения пользователя 
+	 * updatedAt - поле updated_at БД, устанавливается при добавлении и каждом изменении
+	 * (UserRepositoryImpl.updateFields), заголовок Last-Modified страницы пользователя
+	 */
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "updated_at", nullable = false)
+	private Date updatedAt;
+
 	/** геттеры и сеттеры класса */
 	public Integer getId() {
 		return id;
@@ -168,8 +215,47 @@ public class User implements Serializable {
 		this.info = info;
 	}
 
+	public Integer getVersion() {
+		return version;
+	}
+
+	public void setVersion(Integer version) {
+		this.version = version;
+	}
+
+	public Date getUpdatedAt() {
+		return updatedAt;
+	}
+
 	/** конец геттеров и сеттеров класса */
 
+	/**
+	 * Проверка, что ошибка сохранения вызвана нарушением уникальности логина
+	 * (ограничение LOGIN_UNIQUE_CONSTRAINT)
+	 * 
+	 * @param e исключение, полученное при сохранении пользователя
+	 *          (DataIntegrityViolationException репозитория или PersistenceException EntityManager)
+	 * @return true, если пользователь с таким логином уже существует
+	 */
+	public static boolean isLoginConflict(Throwable e) {
+		
+		for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+			if (cause instanceof ConstraintViolationException) {
+				String constraint = ((ConstraintViolationException) cause).getConstraintName();
+				return constraint != null && constraint.toLowerCase().contains(LOGIN_UNIQUE_CONSTRAINT);
+			}
+		}
+		return false;
+	}
+	/** конец isLoginConflict() */
+
+	/** Время изменения при добавлении и изменении сущности */
+	@PrePersist
+	@PreUpdate
+	void touch() {
+		updatedAt = new Date();
+	}
+
 	/** Переопределение метода hashCode */
 	@Override
 	public int hashCode() {
@@ -0,0 +1,77 @@
+package berezin.school.user;
+/**
+ * Класс UserExportRow - данные пользователя для экспорта (UserExportService).
+ * Заполняется конструктором в JPQL запросе (select new ...), поэтому не является
+ * управляемой сущностью: не попадает в контекст персистентности и в кэш второго уровня
+ * (регион User), не загружает поля password и version
+ */
+
+import java.util.Date;
+
+public class UserExportRow {
+
+	/** id - поле id БД */
+	private final Integer id;
+
+	/** Логин пользователя - поле login БД */
+	private final String login;
+
+	/** Имя пользователя - поле name БД */
+	private final String name;
+
+	/** Фамилия пользователя - поле surname БД */
+	private final String surName;
+
+	/** Адрес пользователя - поле adress БД */
+	private final String adress;
+
+	/** Дата рождения пользователя - поле birth_date БД */
+	private final Date birthDate;
+
+	/** Информация о пользователе - поле info БД */
+	private final String info;
+
+	/** Конструктор, используется в JPQL запросе UserRepository */
+	public UserExportRow(Integer id, String login, String name, String surName, String adress, Date birthDate,
+			String info) {
+		this.id = id;
+		this.login = login;
+		this.name = name;
+		this.surName = surName;
+		this.adress = adress;
+		this.birthDate = birthDate;
+		this.info = info;
+	}
+
+	/** геттеры класса */
+	public Integer getId() {
+		return id;
+	}
+
+	public String getLogin() {
+		return login;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getSurName() {
+		return surName;
+	}
+
+	public String getAdress() {
+		return adress;
+	}
+
+	public Date getBirthDate() {
+		return birthDate;
+	}
+
+	public String getInfo() {
+		return info;
+	}
+
+	/** конец геттеров класса */
+
+}
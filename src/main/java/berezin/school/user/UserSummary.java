@@ -0,0 +1,76 @@
+package berezin.school.user;
+/**
+ * Класс UserSummary - краткие данные пользователя для списков.
+ * Заполняется конструктором в JPQL запросе (select new ...), поэтому не является
+ * управляемой сущностью: не попадает в контекст персистентности, не проверяется
+ * Hibernate на изменения и не загружает поля password, adress, info
+ */
+
+import java.io.Serializable;
+import java.util.Date;
+
+public class UserSummary implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** id - поле id БД, используется как курсор страницы */
+	private final Integer id;
+
+	/** Логин пользователя - поле login БД */
+	private final String login;
+
+	/** Имя пользователя - поле name БД */
+	private final String name;
+
+	/** Фамилия пользователя - поле surname БД */
+	private final String surName;
+
+	/** Дата рождения пользователя - поле birth_date БД */
+	private final Date birthDate;
+
+	/** Версия записи - поле version БД (ключ кэша строк списка), null - версия не загружена */
+	private final Integer version;
+
+	/** Конструктор, используется в JPQL запросах UserRepository */
+	public UserSummary(Integer id, String login, String name, String surName, Date birthDate, Integer version) {
+		this.id = id;
+		this.login = login;
+		this.name = name;
+		this.surName = surName;
+		this.birthDate = birthDate;
+		this.version = version;
+	}
+
+	/** Конструктор без версии записи (результаты поиска) */
+	public UserSummary(Integer id, String login, String name, String surName, Date birthDate) {
+		this(id, login, name, surName, birthDate, null);
+	}
+
+	/** геттеры класса */
+	public Integer getId() {
+		return id;
+	}
+
+	public String getLogin() {
+		return login;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getSurName() {
+		return surName;
+	}
+
+	public Date getBirthDate() {
+		return birthDate;
+	}
+
+	public Integer getVersion() {
+		return version;
+	}
+
+	/** конец геттеров класса */
+
+}
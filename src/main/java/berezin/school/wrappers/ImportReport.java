@@ -0,0 +1,107 @@
+package berezin.school.wrappers;
+/**
+* Класс ImportReport  - результат массового импорта пользователей
+* Возвращается клиенту в формате JSON: количество строк, добавленных и отклоненных
+* пользователей, скорость импорта и ошибки по строкам
+*/
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ImportReport {
+
+	/** Максимальное количество ошибок в отчете (остальные только подсчитываются) */
+	private static final int MAX_ERRORS = 1000;
+
+	/** Количество обработанных строк */
+	private int rows;
+
+	/** Количество добавленных пользователей */
+	private int imported;
+
+	/** Количество отклоненных строк */
+	private int rejected;
+
+	/** Время импорта, мс */
+	private long elapsedMillis;
+
+	/** Ошибки по строкам */
+	private final List<RowError> errors = new ArrayList<>();
+
+	/** Учет обработанной строки */
+	public void addRow() {
+		rows++;
+	}
+
+	/** Учет добавленных пользователей */
+	public void addImported(int count) {
+		imported += count;
+	}
+
+	/** Учет отклоненной строки с сообщением об ошибке */
+	public void reject(int row, String login, String message) {
+		rejected++;
+		if (errors.size() < MAX_ERRORS) {
+			errors.add(new RowError(row, login, message));
+		}
+	}
+
+	/** Геттеры и сеттер */
+	public int getRows() {
+		return rows;
+	}
+
+	public int getImported() {
+		return imported;
+	}
+
+	public int getRejected() {
+		return rejected;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	public void setElapsedMillis(long elapsedMillis) {
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	/** Скорость импорта, добавленных пользователей в секунду */
+	public long getRowsPerSecond() {
+		return elapsedMillis == 0 ? imported : imported * 1000L / elapsedMillis;
+	}
+
+	public List<RowError> getErrors() {
+		return errors;
+	}
+
+	/** Ошибка строки: номер строки (с 1), логин и описание */
+	public static class RowError {
+
+		private final int row;
+
+		private final String login;
+
+		private final String message;
+
+		public RowError(int row, String login, String message) {
+			this.row = row;
+			this.login = login;
+			this.message = message;
+		}
+
+		public int getRow() {
+			return row;
+		}
+
+		public String getLogin() {
+			return login;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+	}
+
+}
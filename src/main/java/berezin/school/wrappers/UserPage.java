@@ -0,0 +1,50 @@
+package berezin.school.wrappers;
+/**
+* Класс UserPage  - обертка страницы списка пользователей
+* Используется для вывода списка и ссылок "назад"/"вперед" в шаблонах Thyemleaf
+* Курсоры - id первого и последнего пользователя страницы (keyset-пагинация)
+*/
+
+import java.util.List;
+import berezin.school.user.UserSummary;
+
+public class UserPage {
+
+	/** Краткие данные пользователей страницы, упорядоченные по возрастанию id */
+	private final List<UserSummary> users;
+
+	/** Курсор предыдущей страницы (id первого пользователя), null - предыдущей страницы нет */
+	private final Integer prevCursor;
+
+	/** Курсор следующей страницы (id последнего пользователя), null - следующей страницы нет */
+	private final Integer nextCursor;
+
+	/** Размер страницы */
+	private final int size;
+
+	/** Конструктор */
+	public UserPage(List<UserSummary> users, boolean hasPrev, boolean hasNext, int size) {
+		this.users = users;
+		this.prevCursor = hasPrev && !users.isEmpty() ? users.get(0).getId() : null;
+		this.nextCursor = hasNext && !users.isEmpty() ? users.get(users.size() - 1).getId() : null;
+		this.size = size;
+	}
+
+	/** Геттеры */
+	public List<UserSummary> getUsers() {
+		return users;
+	}
+
+	public Integer getPrevCursor() {
+		return prevCursor;
+	}
+
+	public Integer getNextCursor() {
+		return nextCursor;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+}
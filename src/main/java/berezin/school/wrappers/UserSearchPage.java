@@ -0,0 +1,87 @@
+package berezin.school.wrappers;
+/**
+* Класс UserSearchPage  - обертка страницы результатов поиска пользователей
+* Используется для вывода результатов и ссылок "назад"/"вперед" в шаблоне Thyemleaf userSearch
+* Страницы нумеруются с 0, количество результатов ограничено (school.search.max-results)
+*/
+
+import java.util.Collections;
+import java.util.List;
+import berezin.school.user.UserSummary;
+
+public class UserSearchPage {
+
+	/** Строка поиска (слова через пробел, в нижнем регистре) */
+	private final String query;
+
+	/** Краткие данные найденных пользователей страницы */
+	private final List<UserSummary> users;
+
+	/** Номер страницы */
+	private final int page;
+
+	/** Размер страницы */
+	private final int size;
+
+	/** Есть ли следующая страница */
+	private final boolean hasNext;
+
+	/** Найдены похожие имена и фамилии (совпадений с началом нет) */
+	private final boolean fuzzy;
+
+	/** Сообщение пользователю (запрос не выполнялся), null - запрос выполнен */
+	private final String message;
+
+	/** Конструктор страницы результатов */
+	public UserSearchPage(String query, List<UserSummary> users, int page, int size, boolean hasNext,
+			boolean fuzzy) {
+		this.query = query;
+		this.users = users;
+		this.page = page;
+		this.size = size;
+		this.hasNext = hasNext;
+		this.fuzzy = fuzzy;
+		this.message = null;
+	}
+
+	/** Конструктор страницы без результатов с сообщением */
+	public UserSearchPage(String query, int size, String message) {
+		this.query = query;
+		this.users = Collections.emptyList();
+		this.page = 0;
+		this.size = size;
+		this.hasNext = false;
+		this.fuzzy = false;
+		this.message = message;
+	}
+
+	/** Геттеры */
+	public String getQuery() {
+		return query;
+	}
+
+	public List<UserSummary> getUsers() {
+		return users;
+	}
+
+	public int getPage() {
+		return page;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public boolean isHasNext() {
+		return hasNext;
+	}
+
+	public boolean isFuzzy() {
+		return fuzzy;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+}
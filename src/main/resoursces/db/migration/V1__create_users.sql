@@ -0,0 +1,14 @@
+-- Таблица пользователей users (сущность berezin.school.user.User)
+-- Размеры полей соответствуют ограничениям валидации класса User.
+-- IF NOT EXISTS - таблица могла быть создана ранее средствами Hibernate (ddl-auto=update)
+CREATE TABLE IF NOT EXISTS users (
+    id         SERIAL        NOT NULL,
+    login      VARCHAR(10)   NOT NULL,
+    password   VARCHAR(10)   NOT NULL,
+    name       VARCHAR(15),
+    surname    VARCHAR(15),
+    adress     VARCHAR(100),
+    birth_date DATE,
+    info       VARCHAR(1000),
+    CONSTRAINT users_pkey PRIMARY KEY (id)
+);
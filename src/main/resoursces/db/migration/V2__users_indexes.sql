@@ -0,0 +1,12 @@
+-- Индексы таблицы users под запросы UserRepository.
+-- Для существующих БД (baseline на версии 1) это первая выполняемая миграция.
+
+-- Уникальность логина: поиск по логину (findByLogin, countByLogin, deleteByLogin)
+-- и ограничение User.LOGIN_UNIQUE_CONSTRAINT при регистрации
+CREATE UNIQUE INDEX IF NOT EXISTS users_login_key ON users (login);
+
+-- Сортировка и поиск по фамилии и имени
+CREATE INDEX IF NOT EXISTS users_surname_name_idx ON users (surname, name);
+
+-- Выборки по дате рождения
+CREATE INDEX IF NOT EXISTS users_birth_date_idx ON users (birth_date);
@@ -0,0 +1,5 @@
+-- Генерация id через последовательность с шагом 50 (User.ID_ALLOCATION_SIZE, оптимизатор pooled).
+-- Hibernate использует значение последовательности как верхнюю границу блока из 50 id,
+-- поэтому последовательность сдвигается на шаг выше текущего максимального id
+ALTER SEQUENCE users_id_seq INCREMENT BY 50;
+SELECT setval('users_id_seq', COALESCE((SELECT MAX(id) FROM users), 0) + 50);
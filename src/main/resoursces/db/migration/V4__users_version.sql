@@ -0,0 +1,4 @@
+-- Версия записи для оптимистической блокировки (поле User.version)
+-- Каждое изменение пользователя увеличивает версию, UPDATE выполняется
+-- только при совпадении версии, прочитанной формой
+ALTER TABLE users ADD COLUMN IF NOT EXISTS version INTEGER NOT NULL DEFAULT 0;
@@ -0,0 +1,3 @@
+-- В столбце password хранится хэш пароля (BCrypt - 60 символов, PasswordService).
+-- Пароли в открытом тексте заменяются хэшем при первом успешном входе пользователя
+ALTER TABLE users ALTER COLUMN password TYPE VARCHAR(100);
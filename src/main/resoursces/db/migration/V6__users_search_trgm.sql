@@ -0,0 +1,43 @@
+-- Поиск пользователей по логину, имени и фамилии (UserRepository.search).
+-- Расширение pg_trgm создается владельцем БД (PostgreSQL 13+),
+-- для более ранних версий - суперпользователем (scripts_readme/createdb.sql)
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+-- Совпадение с началом логина, имени или фамилии: LIKE 'начало%' по значению в нижнем регистре.
+-- Сравнение "C" (побайтовое) позволяет выполнять LIKE по индексу и читать совпадения
+-- в порядке индекса, без сортировки всех найденных строк
+CREATE INDEX IF NOT EXISTS users_login_search_idx ON users (lower(login) COLLATE "C", id);
+CREATE INDEX IF NOT EXISTS users_name_search_idx ON users (lower(name) COLLATE "C", id);
+CREATE INDEX IF NOT EXISTS users_surname_search_idx ON users (lower(surname) COLLATE "C", id);
+
+-- Поиск с опечатками: словарь различных имен и фамилий в нижнем регистре с триграммным индексом.
+-- Похожие слова ищутся в словаре (он на порядки меньше таблицы users - имена и фамилии повторяются),
+-- пользователи - по найденным словам индексами users_name_search_idx, users_surname_search_idx.
+-- Индекс GiST возвращает слова в порядке сходства (ORDER BY word <-> 'слово' LIMIT n)
+-- без вычисления сходства со всеми словами, содержащими общие триграммы
+CREATE TABLE IF NOT EXISTS user_search_words (
+	word TEXT PRIMARY KEY
+);
+
+CREATE INDEX IF NOT EXISTS user_search_words_trgm_idx ON user_search_words USING gist (word gist_trgm_ops);
+
+INSERT INTO user_search_words (word)
+	SELECT lower(name) FROM users WHERE name <> ''
+	UNION
+	SELECT lower(surname) FROM users WHERE surname <> ''
+	ON CONFLICT DO NOTHING;
+
+-- Пополнение словаря при добавлении и изменении пользователей.
+-- Слова удаленных и измененных пользователей остаются в словаре: поиск по ним не находит пользователей
+CREATE OR REPLACE FUNCTION user_search_words_add() RETURNS trigger AS $$
+BEGIN
+	INSERT INTO user_search_words (word)
+		SELECT lower(word) FROM unnest(ARRAY[NEW.name, NEW.surname]) word WHERE word <> ''
+		ON CONFLICT DO NOTHING;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS users_search_words_trg ON users;
+CREATE TRIGGER users_search_words_trg AFTER INSERT OR UPDATE OF name, surname ON users
+	FOR EACH ROW EXECUTE PROCEDURE user_search_words_add();
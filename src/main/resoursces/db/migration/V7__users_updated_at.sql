@@ -0,0 +1,5 @@
+-- Время последнего изменения пользователя (поле User.updatedAt, заголовок Last-Modified
+-- страницы пользователя). Устанавливается приложением при добавлении и каждом изменении,
+-- существующим пользователям - время выполнения миграции (значение по умолчанию
+-- вычисляется один раз, строки таблицы не перезаписываются - PostgreSQL 11+)
+ALTER TABLE users ADD COLUMN IF NOT EXISTS updated_at TIMESTAMP NOT NULL DEFAULT now();
@@ -0,0 +1,47 @@
+-- Журнал изменений пользователей (transactional outbox) для внешних систем (UserChangeRelay).
+-- Строка журнала добавляется триггером в той же транзакции, что и изменение таблицы users:
+-- изменения сохранением сущности, запросами UPDATE/DELETE репозитория и импортом
+-- записываются одинаково, откат транзакции отменяет и запись журнала.
+-- txid - номер транзакции (txid_current()): журнал читается в порядке (txid, id) только
+-- для завершенных транзакций (txid меньше xmin текущего снимка), поэтому транзакция,
+-- зафиксированная позже, не может добавить строки перед уже прочитанными
+CREATE TABLE IF NOT EXISTS user_changes (
+	id         BIGSERIAL    NOT NULL,
+	txid       BIGINT       NOT NULL DEFAULT txid_current(),
+	operation  VARCHAR(6)   NOT NULL,
+	user_id    INTEGER      NOT NULL,
+	login      VARCHAR(10)  NOT NULL,
+	payload    JSONB        NOT NULL,
+	changed_at TIMESTAMP    NOT NULL DEFAULT now(),
+	CONSTRAINT user_changes_pkey PRIMARY KEY (id)
+);
+
+CREATE INDEX IF NOT EXISTS user_changes_txid_idx ON user_changes (txid, id);
+
+-- Позиция доставки журнала получателю (последняя доставленная строка)
+CREATE TABLE IF NOT EXISTS user_changes_checkpoints (
+	consumer   VARCHAR(50)  NOT NULL,
+	last_txid  BIGINT       NOT NULL DEFAULT 0,
+	last_id    BIGINT       NOT NULL DEFAULT 0,
+	updated_at TIMESTAMP    NOT NULL DEFAULT now(),
+	CONSTRAINT user_changes_checkpoints_pkey PRIMARY KEY (consumer)
+);
+
+-- Данные пользователя в журнале - все столбцы, кроме пароля.
+-- Изменение только пароля (хэш пароля при входе, PasswordService) в журнал не записывается
+CREATE OR REPLACE FUNCTION user_changes_add() RETURNS trigger AS $$
+BEGIN
+	IF TG_OP = 'DELETE' THEN
+		INSERT INTO user_changes (operation, user_id, login, payload)
+			VALUES (TG_OP, OLD.id, OLD.login, to_jsonb(OLD) - 'password');
+	ELSIF TG_OP = 'INSERT' OR (to_jsonb(OLD) - 'password') IS DISTINCT FROM (to_jsonb(NEW) - 'password') THEN
+		INSERT INTO user_changes (operation, user_id, login, payload)
+			VALUES (TG_OP, NEW.id, NEW.login, to_jsonb(NEW) - 'password');
+	END IF;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS users_changes_trg ON users;
+CREATE TRIGGER users_changes_trg AFTER INSERT OR UPDATE OR DELETE ON users
+	FOR EACH ROW EXECUTE PROCEDURE user_changes_add();
@@ -0,0 +1,18 @@
+-- Журнал изменений пользователей (V8__user_changes_outbox.sql): изменение только пароля
+-- не записывается в журнал. Изменение пароля приложением увеличивает версию записи и время
+-- изменения, поэтому при сравнении строк до и после изменения, кроме пароля, не учитываются
+-- столбцы version и updated_at. Данные пользователя в журнале - как прежде, все столбцы, кроме пароля
+CREATE OR REPLACE FUNCTION user_changes_add() RETURNS trigger AS $$
+BEGIN
+	IF TG_OP = 'DELETE' THEN
+		INSERT INTO user_changes (operation, user_id, login, payload)
+			VALUES (TG_OP, OLD.id, OLD.login, to_jsonb(OLD) - 'password');
+	ELSIF TG_OP = 'INSERT'
+			OR (to_jsonb(OLD) - 'password' - 'version' - 'updated_at')
+				IS DISTINCT FROM (to_jsonb(NEW) - 'password' - 'version' - 'updated_at') THEN
+		INSERT INTO user_changes (operation, user_id, login, payload)
+			VALUES (TG_OP, NEW.id, NEW.login, to_jsonb(NEW) - 'password');
+	END IF;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
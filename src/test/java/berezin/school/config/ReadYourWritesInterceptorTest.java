@@ -0,0 +1,95 @@
+package berezin.school.config;
+/**
+ * Тест ReadYourWritesInterceptor - время изменения отмечается в сессии только после
+ * успешного изменения данных: не при входе в систему, не при повторном отображении формы
+ * и не для запросов без сессии
+ */
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.ModelAndView;
+
+public class ReadYourWritesInterceptorTest {
+
+	private ReadYourWritesInterceptor interceptor;
+
+	@Before
+	public void setUp() {
+
+		interceptor = new ReadYourWritesInterceptor();
+		ReflectionTestUtils.setField(interceptor, "readYourWritesMillis", 5000L);
+	}
+
+	/** Перенаправление после изменения - чтение с основной БД */
+	@Test
+	public void successfulWriteIsStamped() {
+
+		MockHttpSession session = new MockHttpSession();
+		handle(request("PUT", "/users/user1", session), new ModelAndView("redirect:/users/user1"), 302);
+		assertNotNull(session.getAttribute("lastWriteMillis"));
+		assertTrue(readsPrimary(session));
+	}
+	/** конец successfulWriteIsStamped() */
+
+	/** Вход в систему, отклоненная форма и ответ с ошибкой время изменения не отмечают */
+	@Test
+	public void loginAndRejectedWritesAreNotStamped() {
+
+		MockHttpSession session = new MockHttpSession();
+		handle(request("POST", "/login", session), new ModelAndView("redirect:/adminMode"), 302);
+		handle(request("PUT", "/users/user1", session), new ModelAndView("userUpdatingMenu"), 200);
+		handle(request("DELETE", "/api/users/user1", session), null, 404);
+		assertNull(session.getAttribute("lastWriteMillis"));
+		assertFalse(readsPrimary(session));
+	}
+	/** конец loginAndRejectedWritesAreNotStamped() */
+
+	/** Запрос без сессии сессию не создает */
+	@Test
+	public void anonymousWriteCreatesNoSession() {
+
+		MockHttpServletRequest request = request("POST", "/users", null);
+		handle(request, new ModelAndView("redirect:/users/user1"), 302);
+		assertNull(request.getSession(false));
+	}
+	/** конец anonymousWriteCreatesNoSession() */
+
+	private static MockHttpServletRequest request(String method, String path, MockHttpSession session) {
+
+		MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+		request.setServletPath(path);
+		request.setSession(session);
+		return request;
+	}
+
+	private void handle(MockHttpServletRequest request, ModelAndView view, int status) {
+
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		interceptor.preHandle(request, response, null);
+		response.setStatus(status);
+		interceptor.postHandle(request, response, null, view);
+		interceptor.afterCompletion(request, response, null, null);
+	}
+
+	/** Чтение в сессии выполняется с основной БД */
+	private boolean readsPrimary(MockHttpSession session) {
+
+		MockHttpServletRequest request = request("GET", "/users", session);
+		interceptor.preHandle(request, new MockHttpServletResponse(), null);
+		try {
+			return ReplicaRouting.isPrimaryRequired();
+		} finally {
+			interceptor.afterCompletion(request, new MockHttpServletResponse(), null, null);
+		}
+	}
+
+}
@@ -0,0 +1,113 @@
+package berezin.school.config;
+/**
+ * Тест ReplicaCacheTransactionManager - кэши Hibernate при отставании реплики.
+ * Основная БД и реплика - встроенные БД H2. Отставание реплики моделируется копией
+ * основной БД (lagReplica): изменения, сделанные после копирования, на реплике отсутствуют.
+ * Чтение с реплики возвращает прежние данные, но не записывает их в кэш второго уровня
+ * и кэш запросов: следующее чтение с основной БД возвращает измененные данные
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import berezin.school.repositories.UserRepository;
+import berezin.school.user.User;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:primary;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+		"spring.datasource.driver-class-name=org.h2.Driver",
+		"spring.datasource.username=sa",
+		"spring.datasource.password=",
+		"school.datasource.replica.urls=jdbc:h2:mem:replica;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+		"school.db-executor.pool-size=2",
+		"school.datasource.reserved-connections=1",
+		"flyway.enabled=false",
+		"spring.jpa.hibernate.ddl-auto=create",
+		"spring.jpa.properties.javax.persistence.sharedCache.mode=ENABLE_SELECTIVE",
+		"spring.jpa.properties.hibernate.cache.use_second_level_cache=true",
+		"spring.jpa.properties.hibernate.cache.use_query_cache=true",
+		"spring.jpa.properties.hibernate.cache.region.factory_class=org.hibernate.cache.ehcache.SingletonEhCacheRegionFactory",
+		"spring.thymeleaf.check-template-location=false",
+		"school.user-outbox.enabled=false" })
+public class ReplicaCacheTransactionManagerTest {
+
+	@Autowired
+	private UserRepository users;
+
+	@Autowired
+	private ReadWriteRoutingDataSource dataSource;
+
+	/** Сущность, прочитанная с отстающей реплики, не попадает в кэш второго уровня */
+	@Test
+	public void replicaEntityIsNotCached() throws SQLException {
+
+		User user = users.save(newUser("lagentity"));
+		lagReplica();
+		users.updateFields(user.getLogin(), user.getVersion(), Collections.singletonMap("name", "Новое"));
+
+		assertEquals("Прежнее", users.findOne(user.getId()).getName());
+		assertEquals("Новое", ReplicaRouting.onPrimary(() -> users.findOne(user.getId())).getName());
+	}
+	/** конец replicaEntityIsNotCached() */
+
+	/** Результат запроса к отстающей реплике не попадает в кэш запросов */
+	@Test
+	public void replicaQueryIsNotCached() throws SQLException {
+
+		User user = users.save(newUser("lagquery"));
+		lagReplica();
+		users.updateFields(user.getLogin(), user.getVersion(), Collections.singletonMap("name", "Новое"));
+
+		assertEquals("Прежнее", nameOf(users.findAllLoginNotLikeAdmin(), user.getLogin()));
+		assertEquals("Новое", nameOf(ReplicaRouting.onPrimary(users::findAllLoginNotLikeAdmin), user.getLogin()));
+	}
+	/** конец replicaQueryIsNotCached() */
+
+	private static User newUser(String login) {
+
+		User user = new User();
+		user.setLogin(login);
+		user.setPassword("password");
+		user.setName("Прежнее");
+		return user;
+	}
+
+	private static String nameOf(List<User> list, String login) {
+
+		return list.stream().filter(user -> login.equals(user.getLogin())).findFirst().get().getName();
+	}
+
+	/** Копирование основной БД на реплику: реплика отстает на изменения после копирования */
+	private void lagReplica() throws SQLException {
+
+		List<String> script = new ArrayList<>();
+		try (Connection primary = dataSource.getPrimary().getConnection();
+				Statement statement = primary.createStatement();
+				ResultSet rows = statement.executeQuery("SCRIPT NOSETTINGS")) {
+			while (rows.next()) {
+				script.add(rows.getString(1));
+			}
+		}
+		try (Connection replica = dataSource.getReplicas().get(0).getConnection();
+				Statement statement = replica.createStatement()) {
+			statement.execute("DROP ALL OBJECTS");
+			for (String sql : script) {
+				statement.execute(sql);
+			}
+		}
+	}
+	/** конец lagReplica() */
+
+}
@@ -0,0 +1,115 @@
+package berezin.school.repositories;
+/**
+ * Тест триггера журнала изменений пользователей user_changes (миграции V8, V9) на PostgreSQL.
+ * БД задается явно: -Dtest.db.url, -Dtest.db.username, -Dtest.db.password; без test.db.url
+ * тест пропускается (БД приложения тестом не используется). Миграции применяются Flyway
+ * в отдельную временную схему, которая удаляется после теста
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.flywaydb.core.Flyway;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class UserChangesTriggerTest {
+
+	private static final String URL = System.getProperty("test.db.url");
+
+	private static final String USERNAME = System.getProperty("test.db.username");
+
+	private static final String PASSWORD = System.getProperty("test.db.password");
+
+	private static final String LOGIN = "trgtest";
+
+	/** Временная схема теста */
+	private final String schema = "user_changes_test_" + Long.toHexString(System.nanoTime());
+
+	private Connection connection;
+
+	@Before
+	public void migrate() throws SQLException {
+
+		Assume.assumeTrue("БД теста не задана (-Dtest.db.url)", URL != null && !URL.isEmpty());
+		try {
+			connection = DriverManager.getConnection(URL, USERNAME, PASSWORD);
+		} catch (SQLException e) {
+			Assume.assumeNoException("PostgreSQL недоступна: " + URL, e);
+		}
+		Flyway flyway = new Flyway();
+		flyway.setDataSource(URL, USERNAME, PASSWORD);
+		flyway.setSchemas(schema);
+		flyway.setLocations("filesystem:src/main/resoursces/db/migration");
+		flyway.migrate();
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("set search_path to " + schema + ", public");
+		}
+	}
+
+	@After
+	public void dropSchema() throws SQLException {
+
+		if (connection != null) {
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("drop schema if exists " + schema + " cascade");
+			}
+			connection.close();
+		}
+	}
+
+	/** Изменение только пароля (с версией и временем изменения) в журнал не записывается */
+	@Test
+	public void passwordOnlyUpdateIsNotLogged() throws SQLException {
+
+		insertUser();
+		long before = countChanges();
+
+		update("update users set password = 'new-hash', version = version + 1, updated_at = now() + interval '1 second' "
+				+ "where login = ?");
+		assertEquals(before, countChanges());
+
+		update("update users set name = 'Новое', version = version + 1, updated_at = now() + interval '2 second' "
+				+ "where login = ?");
+		assertEquals(before + 1, countChanges());
+	}
+	/** конец passwordOnlyUpdateIsNotLogged() */
+
+	private void insertUser() throws SQLException {
+
+		try (PreparedStatement statement = connection.prepareStatement(
+				"insert into users (login, password, name) values (?, 'old-hash', 'Прежнее')")) {
+			statement.setString(1, LOGIN);
+			statement.executeUpdate();
+		}
+	}
+
+	private void update(String sql) throws SQLException {
+
+		try (PreparedStatement statement = connection.prepareStatement(sql)) {
+			statement.setString(1, LOGIN);
+			assertEquals(1, statement.executeUpdate());
+		}
+	}
+
+	/** Количество записей журнала пользователя */
+	private long countChanges() throws SQLException {
+
+		try (PreparedStatement statement = connection.prepareStatement(
+				"select count(*) from user_changes where login = ?")) {
+			statement.setString(1, LOGIN);
+			try (ResultSet rows = statement.executeQuery()) {
+				rows.next();
+				return rows.getLong(1);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,96 @@
+package berezin.school.services;
+/**
+ * Тест UserImportService - логин, добавленный параллельным запросом после проверки пакета.
+ * Проверка существующих логинов (findExistingLogins) заменена заглушкой, не находящей логинов:
+ * пользователь, уже сохраненный в БД, отклоняется ограничением users_login_key при вставке.
+ * Остальные строки пакета сохраняются, отчет содержит ошибку конфликтующей строки.
+ * Версия записи из импортируемой строки не используется
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import berezin.school.repositories.UserRepository;
+import berezin.school.user.User;
+import berezin.school.wrappers.ImportReport;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:import;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+		"spring.datasource.driver-class-name=org.h2.Driver",
+		"spring.datasource.username=sa",
+		"spring.datasource.password=",
+		"school.db-executor.pool-size=2",
+		"school.datasource.reserved-connections=1",
+		"flyway.enabled=false",
+		"spring.jpa.hibernate.ddl-auto=create",
+		"spring.jpa.properties.javax.persistence.validation.mode=none",
+		"spring.jpa.properties.javax.persistence.sharedCache.mode=ENABLE_SELECTIVE",
+		"spring.jpa.properties.hibernate.cache.use_second_level_cache=true",
+		"spring.jpa.properties.hibernate.cache.region.factory_class=org.hibernate.cache.ehcache.SingletonEhCacheRegionFactory",
+		"spring.thymeleaf.check-template-location=false",
+		"school.user-outbox.enabled=false" })
+public class UserImportServiceTest {
+
+	@MockBean
+	private UserRepository users;
+
+	@Autowired
+	private UserImportService userImport;
+
+	@Autowired
+	private JdbcTemplate jdbc;
+
+	/** Строка с логином, добавленным после проверки пакета, отклоняется, остальные сохраняются */
+	@Test
+	public void concurrentLoginIsRejectedPerRow() {
+
+		when(users.findExistingLogins(anyCollectionOf(String.class))).thenReturn(Collections.<String>emptyList());
+		jdbc.update("insert into users (id, login, password, name, version, updated_at) "
+				+ "values (-1, 'raced', 'hash', 'Параллельный', 0, now())");
+
+		List<User> rows = Arrays.asList(newUser("first"), newUser("raced"), newUser("last"));
+		ImportReport report = userImport.importUsers(rows);
+
+		assertEquals(2, report.getImported());
+		assertEquals(1, report.getRejected());
+		assertEquals(2, report.getErrors().get(0).getRow());
+		assertEquals("raced", report.getErrors().get(0).getLogin());
+		assertEquals(Integer.valueOf(3),
+				jdbc.queryForObject("select count(*) from users where login in ('first', 'raced', 'last')", Integer.class));
+	}
+	/** конец concurrentLoginIsRejectedPerRow() */
+
+	/** Версия записи импортируемого пользователя - начальная, не из строки файла */
+	@Test
+	public void importedVersionIsIgnored() {
+
+		User user = newUser("versioned");
+		user.setVersion(42);
+		assertEquals(1, userImport.importUsers(Collections.singletonList(user)).getImported());
+		assertEquals(Integer.valueOf(0),
+				jdbc.queryForObject("select version from users where login = 'versioned'", Integer.class));
+	}
+	/** конец importedVersionIsIgnored() */
+
+	private static User newUser(String login) {
+
+		User user = new User();
+		user.setLogin(login);
+		user.setPassword("password");
+		user.setName("Имя");
+		return user;
+	}
+
+}